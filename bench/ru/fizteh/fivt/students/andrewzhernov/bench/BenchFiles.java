@@ -0,0 +1,93 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class BenchFiles {
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    static String key(int index) {
+        return "key" + index;
+    }
+
+    static String value(int index) {
+        return "{\"id\": " + index + ", \"name\": \"user" + index + "\", \"active\": " + (index % 2 == 0) + "}";
+    }
+
+    static int[] indices(String distribution, int size, int count, long seed) {
+        Random random = new Random(seed);
+        int[] indices = new int[count];
+        if (distribution.equals("uniform")) {
+            for (int i = 0; i < count; ++i) {
+                indices[i] = random.nextInt(size);
+            }
+        } else if (distribution.equals("zipf")) {
+            double[] cumulative = new double[size];
+            double total = 0;
+            for (int rank = 0; rank < size; ++rank) {
+                total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                cumulative[rank] = total;
+            }
+            for (int i = 0; i < count; ++i) {
+                double target = random.nextDouble() * total;
+                int low = 0;
+                int high = size - 1;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (cumulative[middle] < target) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                indices[i] = low;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+        return indices;
+    }
+
+    static void write(Path file, long size, long seed) throws Exception {
+        Random random = new Random(seed);
+        byte[] chunk = new byte[64 * 1024];
+        try (OutputStream output = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                output.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    static void deleteTree(Path path) throws Exception {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    deleteTree(entry);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    static class NullOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.filemap.DataBase;
+import ru.fizteh.fivt.students.andrewzhernov.filemap.FileTable;
+import ru.fizteh.fivt.students.andrewzhernov.result.NullResultSink;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileMapBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Path dir;
+    private FileTable table;
+    private DataBase dataBase;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("filemap-bench");
+        table = new FileTable(dir.resolve("db.dat").toString());
+        for (int i = 0; i < size; ++i) {
+            table.put(BenchFiles.key(i), BenchFiles.value(i));
+        }
+        table.saveToDisk();
+        dataBase = new DataBase(table, new NullResultSink());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        table.saveToDisk();
+        BenchFiles.deleteTree(dir);
+    }
+
+    @Benchmark
+    public int load() throws Exception {
+        table.loadFromDisk();
+        return table.size();
+    }
+
+    @Benchmark
+    public void save(Dirty dirty) throws Exception {
+        dataBase.saveToDisk();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dirty {
+        private int version;
+
+        @Setup(Level.Invocation)
+        public void touch(FileMapBenchmark state) throws Exception {
+            state.table.put(BenchFiles.key(0), BenchFiles.value(++version));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.Table;
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.TableProvider;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointOpsBenchmark {
+    private static final int SAMPLES = 1 << 20;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"uniform", "zipf"})
+    public String distribution;
+
+    private Path dir;
+    private TableProvider provider;
+    private Table table;
+    private String[] keys;
+    private String[] values;
+    private int[] indices;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("point-ops-bench");
+        provider = new TableProvider(dir.toString());
+        table = provider.createTable("table", false, false);
+        keys = new String[size];
+        values = new String[size];
+        for (int i = 0; i < size; ++i) {
+            keys[i] = BenchFiles.key(i);
+            values[i] = BenchFiles.value(i);
+            table.put(keys[i], values[i]);
+        }
+        indices = BenchFiles.indices(distribution, size, SAMPLES, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        provider.saveTables();
+        BenchFiles.deleteTree(dir);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (SAMPLES - 1);
+        return indices[cursor];
+    }
+
+    @Benchmark
+    public String get() throws Exception {
+        return table.get(keys[next()]);
+    }
+
+    @Benchmark
+    public String put() throws Exception {
+        int index = next();
+        return table.put(keys[index], values[index]);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.shell.Cat;
+import ru.fizteh.fivt.students.andrewzhernov.shell.Copy;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShellFileBenchmark {
+    @Param({"1048576", "268435456"})
+    public long fileSize;
+
+    private Path dir;
+    private Path source;
+    private Path destination;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("shell-bench");
+        source = dir.resolve("source.bin");
+        destination = dir.resolve("destination.bin");
+        BenchFiles.write(source, fileSize, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchFiles.deleteTree(dir);
+    }
+
+    @Benchmark
+    public long cat() throws Exception {
+        BenchFiles.NullOutputStream output = new BenchFiles.NullOutputStream();
+        try (InputStream input = Files.newInputStream(source)) {
+            Cat.printFile(input, output);
+        }
+        return output.getCount();
+    }
+
+    @Benchmark
+    public void copy() throws Exception {
+        Copy.execute(new String[] {"cp", source.toString(), destination.toString()});
+    }
+}
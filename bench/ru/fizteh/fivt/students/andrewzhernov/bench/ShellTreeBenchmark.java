@@ -0,0 +1,78 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.shell.Copy;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShellTreeBenchmark {
+    private static final int FILES_PER_DIR = 4;
+    private static final int FILE_SIZE = 16 * 1024;
+
+    @Param({"wide", "deep"})
+    public String shape;
+
+    private Path dir;
+    private Path source;
+    private Path destination;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("shell-tree-bench");
+        source = dir.resolve("source");
+        destination = dir.resolve("destination");
+        if (shape.equals("wide")) {
+            createTree(source, 3, 8);
+        } else {
+            createTree(source, 64, 1);
+        }
+    }
+
+    private void createTree(Path root, int depth, int fanout) throws Exception {
+        Files.createDirectory(root);
+        for (int i = 0; i < FILES_PER_DIR; ++i) {
+            BenchFiles.write(root.resolve("file" + i), FILE_SIZE, i);
+        }
+        if (depth > 0) {
+            for (int i = 0; i < fanout; ++i) {
+                createTree(root.resolve("dir" + i), depth - 1, fanout);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() throws Exception {
+        BenchFiles.deleteTree(destination);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchFiles.deleteTree(dir);
+    }
+
+    @Benchmark
+    public void copyTree() throws Exception {
+        Copy.execute(new String[] {"cp", "-r", source.toString(), destination.toString()});
+    }
+}
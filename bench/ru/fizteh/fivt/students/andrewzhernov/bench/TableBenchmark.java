@@ -0,0 +1,94 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.DataBase;
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.Table;
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.TableProvider;
+import ru.fizteh.fivt.students.andrewzhernov.result.NullResultSink;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+    private static final int DIRTY_KEYS = 256;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private Path dir;
+    private TableProvider provider;
+    private Table table;
+    private DataBase dataBase;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("multifilemap-bench");
+        provider = new TableProvider(dir.toString());
+        provider.createTable("other", false, false);
+        table = provider.createTable("table", false, false);
+        for (int i = 0; i < size; ++i) {
+            table.put(BenchFiles.key(i), BenchFiles.value(i));
+        }
+        provider.saveTables();
+        dataBase = new DataBase(provider, new NullResultSink());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataBase.close();
+        provider.saveTables();
+        BenchFiles.deleteTree(dir);
+    }
+
+    @Benchmark
+    public int reloadTable() throws Exception {
+        table.load();
+        return table.size();
+    }
+
+    @Benchmark
+    public void saveTable(Dirty dirty) throws Exception {
+        table.save();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void use() throws Exception {
+        dataBase.use("table");
+        dataBase.use("other");
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dirty {
+        private Random random = new Random(42);
+
+        @Setup(Level.Invocation)
+        public void touch(TableBenchmark state) throws Exception {
+            for (int i = 0; i < DIRTY_KEYS; ++i) {
+                int index = random.nextInt(state.size);
+                state.table.put(BenchFiles.key(index), BenchFiles.value(index + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.fizteh.fivt.students.andrewzhernov.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.Schema;
+import ru.fizteh.fivt.students.andrewzhernov.multifilemap.Tuple;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TupleBenchmark {
+    private static final int ROWS = 1 << 12;
+
+    private Schema schema;
+    private String[] text;
+    private String[] packed;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        schema = Schema.parse("(int, long, double, boolean, String)");
+        text = new String[ROWS];
+        packed = new String[ROWS];
+        for (int i = 0; i < ROWS; ++i) {
+            text[i] = i + "\t" + i * 1000003L + "\t" + i / 7.0 + "\t" + (i % 2 == 0) + "\t" + BenchFiles.key(i);
+            packed[i] = encodePacked(i).getPacked();
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (ROWS - 1);
+        return cursor;
+    }
+
+    private Tuple encodePacked(int i) {
+        return schema.newTuple().setInt(0, i).setLong(1, i * 1000003L).setDouble(2, i / 7.0)
+                .setBoolean(3, i % 2 == 0).setString(4, BenchFiles.key(i)).build();
+    }
+
+    @Benchmark
+    public String textEncode() {
+        int i = next();
+        return i + "\t" + i * 1000003L + "\t" + i / 7.0 + "\t" + (i % 2 == 0) + "\t" + BenchFiles.key(i);
+    }
+
+    @Benchmark
+    public String packedEncode() {
+        return encodePacked(next()).getPacked();
+    }
+
+    @Benchmark
+    public double textDecode() {
+        String[] columns = text[next()].split("\t");
+        return Integer.parseInt(columns[0]) + Long.parseLong(columns[1]) + Double.parseDouble(columns[2])
+                + (Boolean.parseBoolean(columns[3]) ? 1 : 0) + columns[4].length();
+    }
+
+    @Benchmark
+    public double packedDecode() throws Exception {
+        Tuple tuple = Tuple.wrap(schema, packed[next()]);
+        return tuple.getInt(0) + tuple.getLong(1) + tuple.getDouble(2) + (tuple.getBoolean(3) ? 1 : 0)
+                + tuple.getString(4).length();
+    }
+}
@@ -1,100 +1,94 @@
 package ru.fizteh.fivt.students.andrewzhernov.filemap;
 
-import java.io.File;
-import java.io.RandomAccessFile;
-import java.util.Map;
-import java.util.HashMap;
+import java.nio.file.Paths;
+import java.util.List;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.result.ResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
 
 public class DataBase {
-    private Map<String, String> dataBase;
-    private String dbPath;
+    private static final Histogram PUT = Metrics.histogram("put");
+    private static final Histogram GET = Metrics.histogram("get");
+    private static final Histogram REMOVE = Metrics.histogram("remove");
+    private static final Histogram LIST = Metrics.histogram("list");
 
-    public DataBase(String name) throws Exception {
-        if (name == null) {
-            throw new Exception("Usage: java -Ddb.file=<name> ...");
-        }
-        dataBase = new HashMap<String, String>();
-        File dbFile = openFile(name);
-        if (dbFile.isDirectory()) {
-            throw new Exception("Can't create file, " + name + " is a directory");
-        } else { 
-            dbPath = dbFile.getCanonicalPath();
-            if (dbFile.exists()) {
-                loadFromDisk();
-            }
-        }
-    }
+    private FileTable table;
+    private ResultSink out;
 
-    private static File openFile(String name) throws Exception {
-        if (name.charAt(0) == File.separatorChar) {
-            return new File(name);
-        } else {
-            return new File(System.getProperty("user.dir") + File.separator + name);
-        }
+    public DataBase(FileTable table, ResultSink out) {
+        this.table = table;
+        this.out = out;
     }
 
-    private String readFromDataBase(RandomAccessFile file) throws Exception {
-        int wordSize = file.readInt();
-        byte[] word = new byte[wordSize];
-        file.read(word, 0, wordSize);
-        return new String(word);
+    public void saveToDisk() throws Exception {
+        table.saveToDisk();
     }
 
-    private void writeToDataBase(RandomAccessFile file, String word) throws Exception {
-        file.writeInt(word.getBytes("UTF-8").length);
-        file.write(word.getBytes("UTF-8"));
+    public void flush() throws Exception {
+        out.flush();
     }
 
-    public void loadFromDisk() throws Exception {
-        RandomAccessFile file = new RandomAccessFile(dbPath, "r");
-        while (file.getFilePointer() < file.length()) {
-            String key = readFromDataBase(file);
-            String value = readFromDataBase(file);
-            dataBase.put(key, value);
+    public void importFile(String file, RecordFormat format) throws Exception {
+        try (RecordSource source = format.openSource(Paths.get(file))) {
+            out.println("imported " + table.importRecords(source));
         }
-        file.close();
     }
 
-    public void saveToDisk() throws Exception {
-        RandomAccessFile file = new RandomAccessFile(dbPath, "rw");
-        for (String key : dataBase.keySet()) {
-            writeToDataBase(file, key);
-            writeToDataBase(file, dataBase.get(key));
+    public void exportFile(String file, RecordFormat format) throws Exception {
+        try (RecordSink sink = format.openSink(Paths.get(file))) {
+            out.println("exported " + table.exportRecords(sink));
         }
-        file.close();
     }
 
-    public void put(String key, String value) {
-        if (dataBase.containsKey(key)) {
-            System.out.println("overwrite");
-            System.out.println(dataBase.get(key));
-            dataBase.remove(key);
-            dataBase.put(key, value);
+    public void put(String key, String value) throws Exception {
+        long start = System.nanoTime();
+        String old = table.put(key, value);
+        PUT.record(System.nanoTime() - start);
+        if (old != null) {
+            out.println("overwrite");
+            out.println(old);
         } else {
-            System.out.println("new");
-            dataBase.put(key, value);
+            out.println("new");
         }
     }
 
-    public void get(String key) {
-        if (dataBase.containsKey(key)) {
-            System.out.println("found");
-            System.out.println(dataBase.get(key));
+    public void get(String key) throws Exception {
+        long start = System.nanoTime();
+        String value = table.get(key);
+        GET.record(System.nanoTime() - start);
+        if (value != null) {
+            out.println("found");
+            out.println(value);
         } else {
-            System.out.println("not found");
+            out.println("not found");
         }
     }
 
-    public void remove(String key) {
-        if (dataBase.containsKey(key)) {
-            System.out.println("removed");
-            dataBase.remove(key);
+    public void remove(String key) throws Exception {
+        long start = System.nanoTime();
+        String old = table.remove(key);
+        REMOVE.record(System.nanoTime() - start);
+        if (old != null) {
+            out.println("removed");
         } else {
-            System.out.println("not found");
+            out.println("not found");
         }
     }
 
-    public void list() {
-        System.out.println(String.join(", ", dataBase.keySet()));
+    public void list() throws Exception {
+        long start = System.nanoTime();
+        List<String> keys = table.list();
+        LIST.record(System.nanoTime() - start);
+        out.println(String.join(", ", keys));
+    }
+
+    public void stats() throws Exception {
+        for (String line : Metrics.report()) {
+            out.println(line);
+        }
     }
 }
@@ -2,14 +2,30 @@ package ru.fizteh.fivt.students.andrewzhernov.filemap;
 
 import java.util.Scanner;
 
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.result.ResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.result.StreamResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.server.Server;
+import ru.fizteh.fivt.students.andrewzhernov.server.Session;
+import ru.fizteh.fivt.students.andrewzhernov.server.SessionFactory;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+
 public class FileMap {
     public static void main(String[] args) {
         try {
-            DataBase dataBase = new DataBase(System.getProperty("db.file"));
-            if (args.length == 0) {
-                interactiveMode(dataBase);
+            FileTable table = new FileTable(System.getProperty("db.file"));
+            int port = Server.getPort("db.port");
+            if (Boolean.parseBoolean(System.getProperty("db.jmx", Boolean.toString(port >= 0)))) {
+                Metrics.registerMBean();
+            }
+            ResultSink out = new StreamResultSink(System.out);
+            DataBase dataBase = new DataBase(table, out);
+            if (port >= 0) {
+                serverMode(port, table);
+            } else if (args.length == 0) {
+                interactiveMode(dataBase, out);
             } else {
-                batchMode(args, dataBase);
+                batchMode(args, dataBase, out);
             }
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -17,27 +33,67 @@ public class FileMap {
         }
     }
 
-    public static void interactiveMode(DataBase dataBase) throws Exception {
+    public static void interactiveMode(DataBase dataBase, ResultSink out) throws Exception {
         Scanner input = new Scanner(System.in);
-        System.out.print("$ ");
+        out.print("$ ");
+        out.flush();
         while (input.hasNextLine()) {
             try {
                 executeCommand(parseCommand(input.nextLine()), dataBase);
             } catch (Exception e) {
+                out.flush();
                 System.err.println(e.getMessage());
             }
-            System.out.print("$ ");
+            out.print("$ ");
+            out.flush();
         }
         dataBase.saveToDisk();
+        out.flush();
         input.close(); 
     }
 
-    public static void batchMode(String[] args, DataBase dataBase) throws Exception {
+    public static void serverMode(int port, final FileTable table) throws Exception {
+        Server server = new Server(port, new SessionFactory() {
+            @Override
+            public Session open(ResultSink out) {
+                final DataBase dataBase = new DataBase(table, out);
+                return new Session() {
+                    @Override
+                    public void execute(String command) throws Exception {
+                        executeCommand(parseCommand(command), dataBase);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    table.saveToDisk();
+                } catch (Exception e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        });
+        server.bind();
+        System.out.println("listening on port " + server.getLocalPort());
+        server.run();
+    }
+
+    public static void batchMode(String[] args, DataBase dataBase, ResultSink out) throws Exception {
         String[] input = parseInput(args);
-        for (String cmd : input) {
-            executeCommand(parseCommand(cmd), dataBase);
+        try {
+            for (String cmd : input) {
+                executeCommand(parseCommand(cmd), dataBase);
+            }
+            dataBase.saveToDisk();
+        } finally {
+            out.flush();
         }
-        dataBase.saveToDisk();
     }
 
     private static String[] parseInput(String[] args) throws Exception {
@@ -74,14 +130,31 @@ public class FileMap {
                     throw new Exception("Usage: list");
                 }
                 dataBase.list();
+            } else if (cmd[0].equals("import") || cmd[0].equals("export")) {
+                if (cmd.length != 2 && cmd.length != 3) {
+                    throw new Exception("Usage: " + cmd[0] + " <file> [tsv|native]");
+                }
+                RecordFormat format = cmd.length == 3 ? RecordFormat.parse(cmd[2]) : RecordFormat.TSV;
+                if (cmd[0].equals("import")) {
+                    dataBase.importFile(cmd[1], format);
+                } else {
+                    dataBase.exportFile(cmd[1], format);
+                }
+            } else if (cmd[0].equals("stats")) {
+                if (cmd.length != 1) {
+                    throw new Exception("Usage: stats");
+                }
+                dataBase.stats();
             } else if (cmd[0].equals("exit")) {
                 if (cmd.length != 1) {
                     throw new Exception("Usage: exit");
                 }
                 try {
                     dataBase.saveToDisk();
+                    dataBase.flush();
                     System.exit(0);
                 } catch (Exception e) {
+                    dataBase.flush();
                     System.err.println(e.getMessage());
                     System.exit(1);
                 }
@@ -0,0 +1,421 @@
+package ru.fizteh.fivt.students.andrewzhernov.filemap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
+import ru.fizteh.fivt.students.andrewzhernov.storage.Checkpointer;
+import ru.fizteh.fivt.students.andrewzhernov.storage.Durability;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RateLimiter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
+import ru.fizteh.fivt.students.andrewzhernov.storage.StorageEngine;
+import ru.fizteh.fivt.students.andrewzhernov.storage.StripedMap;
+
+public class FileTable {
+    private static final long MIN_DEAD_RECORDS = 1024;
+    private static final int STRIPES = 256;
+    private static final int IMPORT_BATCH = 4096;
+    private static final Histogram LOAD = Metrics.histogram("file.load");
+    private static final Histogram SAVE = Metrics.histogram("file.save");
+    private static final Histogram COMPACT = Metrics.histogram("file.compact");
+    private static final LongAdder COPIES = Metrics.counter("checkpoint.copies");
+
+    private StorageEngine engine;
+    private StripedMap records;
+    private boolean[] frozen;
+    private ReentrantLock[] locks;
+    private ReentrantLock checkpointLock;
+    private boolean concurrentReads;
+    private Path dbPath;
+    private volatile AppendLog log;
+    private LongAdder logRecords;
+    private LongAdder size;
+    private double compactionRatio;
+    private Durability durability;
+    private int syncOps;
+    private long syncMillis;
+    private long checkpointMillis;
+    private RateLimiter checkpointLimiter;
+
+    public FileTable(String name) throws Exception {
+        if (name == null) {
+            throw new Exception("Usage: java -Ddb.file=<name> ...");
+        }
+        engine = StorageEngine.parse(System.getProperty("db.storage", "heap"));
+        records = new StripedMap(engine, STRIPES);
+        frozen = new boolean[STRIPES];
+        concurrentReads = engine.isConcurrent();
+        locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; ++i) {
+            locks[i] = new ReentrantLock();
+        }
+        checkpointLock = new ReentrantLock();
+        logRecords = new LongAdder();
+        size = new LongAdder();
+        compactionRatio = Double.parseDouble(System.getProperty("db.compaction.ratio", "0.5"));
+        durability = Durability.parse(System.getProperty("db.durability", "async"));
+        syncOps = Integer.parseInt(System.getProperty("db.sync.ops", "64"));
+        syncMillis = Long.parseLong(System.getProperty("db.sync.ms", "10"));
+        if (syncOps < 1 || syncMillis < 0) {
+            throw new Exception("db.sync.ops must be positive and db.sync.ms non-negative");
+        }
+        checkpointMillis = Long.parseLong(System.getProperty("db.checkpoint.ms", "1000"));
+        long checkpointRate = Long.parseLong(System.getProperty("db.checkpoint.rate", "0"));
+        if (checkpointMillis < 0 || checkpointRate < 0) {
+            throw new Exception("db.checkpoint.ms and db.checkpoint.rate must be non-negative");
+        }
+        checkpointLimiter = new RateLimiter(checkpointRate);
+        File dbFile = openFile(name);
+        if (dbFile.isDirectory()) {
+            throw new Exception("Can't create file, " + name + " is a directory");
+        } else {
+            dbPath = dbFile.getCanonicalFile().toPath();
+            if (dbFile.exists()) {
+                loadFromDisk();
+            }
+        }
+        if (checkpointMillis > 0) {
+            Checkpointer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        checkpoint();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            }, checkpointMillis);
+        }
+    }
+
+    private static File openFile(String name) throws Exception {
+        if (name.charAt(0) == File.separatorChar) {
+            return new File(name);
+        } else {
+            return new File(System.getProperty("user.dir") + File.separator + name);
+        }
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; --i) {
+            locks[i].unlock();
+        }
+    }
+
+    public void loadFromDisk() throws Exception {
+        long start = System.nanoTime();
+        checkpointLock.lock();
+        lockAll();
+        try {
+            records.clear();
+            logRecords.reset();
+            logRecords.add(AppendLog.replay(dbPath, records));
+            size.reset();
+            size.add(records.size());
+        } finally {
+            unlockAll();
+            checkpointLock.unlock();
+        }
+        LOAD.record(System.nanoTime() - start);
+    }
+
+    private long getDeadRecords() {
+        return logRecords.sum() - size.sum();
+    }
+
+    private boolean needsCompaction(long minDeadRecords) {
+        long dead = getDeadRecords();
+        return dead >= minDeadRecords && dead > compactionRatio * logRecords.sum();
+    }
+
+    private void append(String key, String value) throws Exception {
+        append(Collections.singletonMap(key, value));
+    }
+
+    private void append(Map<String, String> changes) throws Exception {
+        AppendLog current = log;
+        if (current == null) {
+            synchronized (this) {
+                if (log == null) {
+                    log = new AppendLog(dbPath, durability, syncOps, syncMillis);
+                }
+                current = log;
+            }
+        }
+        current.append(changes);
+        logRecords.add(changes.size());
+    }
+
+    private void compactIfNeeded() throws Exception {
+        if (checkpointMillis > 0 || !needsCompaction(MIN_DEAD_RECORDS)) {
+            return;
+        }
+        lockAll();
+        try {
+            if (needsCompaction(MIN_DEAD_RECORDS)) {
+                compact();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void compact() throws Exception {
+        long start = System.nanoTime();
+        closeLog();
+        AppendLog.rewrite(dbPath, records);
+        syncDirectory();
+        logRecords.reset();
+        logRecords.add(size.sum());
+        COMPACT.record(System.nanoTime() - start);
+    }
+
+    public void checkpoint() throws Exception {
+        checkpointLock.lock();
+        try {
+            if (!needsCompaction(MIN_DEAD_RECORDS)) {
+                return;
+            }
+            long start = System.nanoTime();
+            StripedMap snapshot;
+            long offset;
+            long snapshotRecords;
+            long appended;
+            lockAll();
+            try {
+                offset = Files.size(dbPath);
+                snapshot = records.snapshot();
+                Arrays.fill(frozen, true);
+                snapshotRecords = size.sum();
+                appended = logRecords.sum();
+            } finally {
+                unlockAll();
+            }
+            Path temp;
+            try {
+                temp = AppendLog.writeSnapshot(dbPath, snapshot, checkpointLimiter);
+            } finally {
+                for (int stripe = 0; stripe < STRIPES; ++stripe) {
+                    locks[stripe].lock();
+                    frozen[stripe] = false;
+                    locks[stripe].unlock();
+                }
+            }
+            lockAll();
+            try {
+                closeLog();
+                AppendLog.appendTail(dbPath, offset, temp);
+                Files.move(temp, dbPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                long tail = logRecords.sum() - appended;
+                logRecords.reset();
+                logRecords.add(snapshotRecords + tail);
+            } finally {
+                unlockAll();
+            }
+            COMPACT.record(System.nanoTime() - start);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void syncDirectory() throws Exception {
+        if (durability != Durability.NONE) {
+            AppendLog.syncDirectory(dbPath.getParent());
+        }
+    }
+
+    private synchronized void closeLog() throws Exception {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    public void saveToDisk() throws Exception {
+        long start = System.nanoTime();
+        checkpointLock.lock();
+        lockAll();
+        try {
+            if (needsCompaction(1)) {
+                compact();
+            }
+            closeLog();
+        } finally {
+            unlockAll();
+            checkpointLock.unlock();
+        }
+        SAVE.record(System.nanoTime() - start);
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    public String get(String key) {
+        int stripe = records.stripeOf(key);
+        if (concurrentReads) {
+            return records.getStripe(stripe).get(key);
+        }
+        locks[stripe].lock();
+        try {
+            return records.getStripe(stripe).get(key);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    public String put(String key, String value) throws Exception {
+        int stripe = records.stripeOf(key);
+        String old;
+        locks[stripe].lock();
+        try {
+            old = writable(stripe).put(key, value);
+            if (old == null) {
+                size.increment();
+            }
+            append(key, value);
+        } finally {
+            locks[stripe].unlock();
+        }
+        compactIfNeeded();
+        return old;
+    }
+
+    public String remove(String key) throws Exception {
+        int stripe = records.stripeOf(key);
+        String old;
+        locks[stripe].lock();
+        try {
+            if (!records.getStripe(stripe).containsKey(key)) {
+                return null;
+            }
+            old = writable(stripe).remove(key);
+            size.decrement();
+            append(key, null);
+        } finally {
+            locks[stripe].unlock();
+        }
+        compactIfNeeded();
+        return old;
+    }
+
+    private Map<String, String> writable(int stripe) {
+        Map<String, String> target = records.getStripe(stripe);
+        if (frozen[stripe]) {
+            Map<String, String> copy = engine.newMap();
+            copy.putAll(target);
+            records.setStripe(stripe, copy);
+            frozen[stripe] = false;
+            COPIES.increment();
+            target = copy;
+        }
+        return target;
+    }
+
+    public List<String> list() {
+        List<String> keys = new ArrayList<String>(size());
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            locks[stripe].lock();
+            try {
+                keys.addAll(records.getStripe(stripe).keySet());
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        return keys;
+    }
+
+    public long importRecords(RecordSource source) throws Exception {
+        long count = 0;
+        Map<String, String> batch = new HashMap<String, String>();
+        while (source.next()) {
+            batch.put(source.getKey(), source.getValue());
+            ++count;
+            if (batch.size() >= IMPORT_BATCH) {
+                applyBatch(batch);
+                batch.clear();
+            }
+        }
+        applyBatch(batch);
+        return count;
+    }
+
+    private void applyBatch(Map<String, String> batch) throws Exception {
+        List<List<Map.Entry<String, String>>> byStripe = new ArrayList<List<Map.Entry<String, String>>>(
+                Collections.<List<Map.Entry<String, String>>>nCopies(STRIPES, null));
+        for (Map.Entry<String, String> record : batch.entrySet()) {
+            int stripe = records.stripeOf(record.getKey());
+            if (byStripe.get(stripe) == null) {
+                byStripe.set(stripe, new ArrayList<Map.Entry<String, String>>());
+            }
+            byStripe.get(stripe).add(record);
+        }
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            if (byStripe.get(stripe) == null) {
+                continue;
+            }
+            Map<String, String> changes = new LinkedHashMap<String, String>();
+            locks[stripe].lock();
+            try {
+                Map<String, String> target = writable(stripe);
+                for (Map.Entry<String, String> record : byStripe.get(stripe)) {
+                    String key = record.getKey();
+                    String old = record.getValue() == null ? target.remove(key) : target.put(key, record.getValue());
+                    if (old == null && record.getValue() != null) {
+                        size.increment();
+                    } else if (old != null && record.getValue() == null) {
+                        size.decrement();
+                    }
+                    if (old != null || record.getValue() != null) {
+                        changes.put(key, record.getValue());
+                    }
+                }
+                if (!changes.isEmpty()) {
+                    append(changes);
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        compactIfNeeded();
+    }
+
+    public long exportRecords(RecordSink sink) throws Exception {
+        long count = 0;
+        for (int stripe = 0; stripe < STRIPES; ++stripe) {
+            List<Map.Entry<String, String>> copy;
+            locks[stripe].lock();
+            try {
+                copy = new ArrayList<Map.Entry<String, String>>(records.getStripe(stripe).entrySet());
+            } finally {
+                locks[stripe].unlock();
+            }
+            for (Map.Entry<String, String> record : copy) {
+                sink.write(record.getKey(), record.getValue());
+                ++count;
+            }
+        }
+        return count;
+    }
+}
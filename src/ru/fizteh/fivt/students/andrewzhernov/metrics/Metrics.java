@@ -0,0 +1,94 @@
+package ru.fizteh.fivt.students.andrewzhernov.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+public class Metrics {
+    public static final String OBJECT_NAME = "ru.fizteh.fivt.students.andrewzhernov:type=Metrics";
+    static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+    static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<String, Histogram>();
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<String, LongAdder>();
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    public static Histogram histogram(String name) {
+        Histogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            HISTOGRAMS.putIfAbsent(name, new Histogram());
+            histogram = HISTOGRAMS.get(name);
+        }
+        return histogram;
+    }
+
+    public static LongAdder counter(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        if (counter == null) {
+            COUNTERS.putIfAbsent(name, new LongAdder());
+            counter = COUNTERS.get(name);
+        }
+        return counter;
+    }
+
+    public static SortedMap<String, Histogram.Snapshot> getHistograms() {
+        SortedMap<String, Histogram.Snapshot> snapshots = new TreeMap<String, Histogram.Snapshot>();
+        for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    public static SortedMap<String, Long> getCounters() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    private static String micros(double nanos) {
+        return String.format("%.1fus", nanos / 1000);
+    }
+
+    public static List<String> report() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Histogram.Snapshot> entry : getHistograms().entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder(entry.getKey());
+            line.append(" count=").append(snapshot.getCount());
+            line.append(" mean=").append(micros(snapshot.getMean()));
+            for (int i = 0; i < PERCENTILES.length; ++i) {
+                line.append(' ').append(PERCENTILE_NAMES[i]).append('=');
+                line.append(micros(snapshot.getPercentile(PERCENTILES[i])));
+            }
+            line.append(" max=").append(micros(snapshot.getMax()));
+            lines.add(line.toString());
+        }
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            lines.add(entry.getKey() + " " + entry.getValue());
+        }
+        return lines;
+    }
+
+    public static synchronized void registerMBean() throws Exception {
+        if (!registered) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.fizteh.fivt.students.andrewzhernov.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+public class MetricsBean implements DynamicMBean {
+    private static final String[] STATS = {"count", "mean", "p50", "p99", "p999", "max"};
+
+    private static Object stat(Histogram.Snapshot snapshot, String stat) {
+        if (stat.equals("count")) {
+            return snapshot.getCount();
+        } else if (stat.equals("mean")) {
+            return snapshot.getMean();
+        } else if (stat.equals("max")) {
+            return snapshot.getMax();
+        }
+        for (int i = 0; i < Metrics.PERCENTILE_NAMES.length; ++i) {
+            if (Metrics.PERCENTILE_NAMES[i].equals(stat)) {
+                return snapshot.getPercentile(Metrics.PERCENTILES[i]);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long counter = Metrics.getCounters().get(attribute);
+        if (counter != null) {
+            return counter;
+        }
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            Histogram.Snapshot snapshot = Metrics.getHistograms().get(attribute.substring(0, dot));
+            if (snapshot != null) {
+                Object value = stat(snapshot, attribute.substring(dot + 1));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList values = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                values.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                continue;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (String name : Metrics.getHistograms().keySet()) {
+            for (String stat : STATS) {
+                String type = stat.equals("mean") ? "double" : "long";
+                attributes.add(new MBeanAttributeInfo(name + "." + stat, type,
+                        name + " latency " + stat + (stat.equals("count") ? "" : ", ns"), true, false, false));
+            }
+        }
+        for (Map.Entry<String, Long> entry : Metrics.getCounters().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), "long", entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Storage operation metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+public enum ColumnType {
+    INT("int", 4), LONG("long", 8), BYTE("byte", 1), FLOAT("float", 4), DOUBLE("double", 8),
+    BOOLEAN("boolean", 1), STRING("String", 0);
+
+    private String name;
+    private int width;
+
+    ColumnType(String name, int width) {
+        this.name = name;
+        this.width = width;
+    }
+
+    public static ColumnType parse(String name) throws Exception {
+        for (ColumnType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+        throw new Exception("Unknown column type " + name
+                + ", expected int, long, byte, float, double, boolean or String");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isFixed() {
+        return width > 0;
+    }
+}
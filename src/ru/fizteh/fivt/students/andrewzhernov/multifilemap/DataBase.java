@@ -1,199 +1,274 @@
 package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.io.RandomAccessFile;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.HashMap;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.result.ResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
 
 public class DataBase {
-    private static final int COUNT = 16;
-    
-    private Map<String, Integer> recordsCount;
-    private Map<String, String> table;
-    private String name;
-    private Path dir;
-
-    public DataBase(String directory) throws Exception {
-        if (directory == null) {
-            throw new Exception("Usage: java -Dfizteh.db.dir=<name> ...");
-        }
-        recordsCount = new HashMap<String, Integer>();
-        table = new HashMap<String, String>();
-        dir = Paths.get(directory);
-        if (!Files.exists(dir)) {
-            Files.createDirectory(dir);
-        } else {
-            for (String tablename : dir.toFile().list()) {
-                reloadTable(tablename);
-                recordsCount.put(tablename, table.size());
-            }
-            table.clear();
-        }
-        name = null;
-    }
-
-    private static String readString(RandomAccessFile file) throws Exception {
-        int wordSize = file.readInt();
-        byte[] word = new byte[wordSize];
-        file.read(word, 0, wordSize);
-        return new String(word);
-    }
-
-    private static void writeString(RandomAccessFile file, String word) throws Exception {
-        file.writeInt(word.getBytes("UTF-8").length);
-        file.write(word.getBytes("UTF-8"));
-    }
-
-    public void reloadTable(String tablename) throws Exception {
-        table.clear();
-        name = tablename;
-        Path tablePath = dir.resolve(tablename);
-        for (int i = 0; i < COUNT; ++i) {
-            Path tableDir = tablePath.resolve(Integer.toString(i) + ".dir");
-            if (Files.isDirectory(tableDir)) {
-                for (int j = 0; j < COUNT; ++j) {
-                    Path tableFile = tableDir.resolve(Integer.toString(j) + ".dat");
-                    if (Files.exists(tableFile)) {
-                        RandomAccessFile file = new RandomAccessFile(tableFile.toString(), "r");
-                        while (file.getFilePointer() < file.length()) {
-                            String key = readString(file);
-                            String value = readString(file);
-                            table.put(key, value);
-                        }
-                        file.close();
-                    }
-                }            
-            }
+    private static final Histogram PUT = Metrics.histogram("put");
+    private static final Histogram GET = Metrics.histogram("get");
+    private static final Histogram REMOVE = Metrics.histogram("remove");
+    private static final Histogram LIST = Metrics.histogram("list");
+
+    private TableProvider provider;
+    private Transaction transaction;
+    private ResultSink out;
+    private boolean strictUse;
+
+    public DataBase(TableProvider provider, ResultSink out) {
+        this.provider = provider;
+        this.out = out;
+        transaction = null;
+        strictUse = Boolean.parseBoolean(System.getProperty("fizteh.db.use.strict", "false"));
+    }
+
+    private Transaction current() throws Exception {
+        if (transaction == null) {
+            throw new Exception("The table is not selected");
         }
+        return transaction;
     }
 
-    public void saveTable() throws Exception {
-        if (name == null) {
-            return;
-        } 
-        Path tablePath = dir.resolve(name);
-        for (int i = 0; i < COUNT; ++i) {
-            Path tableDir = tablePath.resolve(Integer.toString(i) + ".dir");
-            if (!Files.isDirectory(tableDir)) {
-                Files.createDirectory(tableDir);
-            }
-            for (int j = 0; j < COUNT; ++j) {
-                Path tableFile = tableDir.resolve(Integer.toString(j) + ".dat");
-                if (!Files.exists(tableFile)) {
-                    Files.createFile(tableFile);
-                }
-                RandomAccessFile file = new RandomAccessFile(tableFile.toString(), "rw");
-                boolean written = false;
-                for (String key : table.keySet()) {
-                    int first = key.hashCode() % COUNT;
-                    int second = key.hashCode() / COUNT % COUNT;
-                    if (i == first && j == second) {
-                        writeString(file, key);
-                        writeString(file, table.get(key));
-                        written = true;
-                    }
-                }
-                file.close();
-                if (!written) {
-                    Files.deleteIfExists(tableFile);
-                }
-            }
-            if (tableDir.toFile().list().length == 0) {
-                Files.deleteIfExists(tableDir);
-            }
+    public void saveTables() throws Exception {
+        if (transaction != null) {
+            transaction.commit();
         }
+        provider.saveTables();
+    }
+
+    public void flush() throws Exception {
+        out.flush();
     }
 
-    public void create(String tablename) throws Exception {
-        Path tablePath = dir.resolve(tablename);
-        if (Files.isDirectory(tablePath)) {
-            System.out.println("tablename exists");
+    public void close() throws Exception {
+        if (transaction != null) {
+            transaction.commit();
+            transaction.close();
+            transaction = null;
+        }
+    }
+
+    private static String encode(Transaction selected, String value) throws Exception {
+        Schema schema = selected.getTable().getSchema();
+        return schema == null ? value : schema.parseTuple(value).getPacked();
+    }
+
+    private static String display(Transaction selected, String value) {
+        Schema schema = selected.getTable().getSchema();
+        return schema == null ? value : new Tuple(schema, value).toString();
+    }
+
+    public boolean hasSchema() throws Exception {
+        return current().getTable().getSchema() != null;
+    }
+
+    public void create(String tablename, boolean sorted, boolean compressed, String signature) throws Exception {
+        Schema schema = signature == null ? null : Schema.parse(signature);
+        if (provider.createTable(tablename, sorted, compressed, schema) == null) {
+            out.println("tablename exists");
         } else {
-            Files.createDirectory(tablePath);
-            recordsCount.put(tablename, 0);
-            System.out.println("created");
+            out.println("created");
         }
     }
 
     public void drop(String tablename) throws Exception {
-        Path tablePath = dir.resolve(tablename);
-        if (Files.isDirectory(tablePath)) {
-            Utils.remove(tablePath);
-            recordsCount.remove(tablename);
-            if (name != null && name.equals(tablename)) {
-                name = null;
-            }
-            System.out.println("dropped");
+        if (transaction != null && transaction.getTable().getName().equals(tablename)) {
+            transaction.close();
+            transaction = null;
+        }
+        if (provider.removeTable(tablename)) {
+            out.println("dropped");
         } else {
-            System.out.println("tablename not exists");
+            out.println("tablename not exists");
         }
     }
 
     public void use(String tablename) throws Exception {
-        Path tablePath = dir.resolve(tablename);
-        if (Files.isDirectory(tablePath)) {
-            if (name != null) {
-                saveTable();
+        Table next = provider.getTable(tablename);
+        if (next == null) {
+            out.println("tablename not exists");
+            return;
+        }
+        if (transaction != null && transaction.getTable() != next) {
+            if (strictUse) {
+                int changes = transaction.getChangesCount();
+                if (changes > 0) {
+                    out.println(changes + " unsaved changes");
+                    return;
+                }
+            } else {
+                transaction.commit();
+                transaction.getTable().save();
             }
-            reloadTable(tablename);
-            System.out.println("using tablename");
-        } else {
-            System.out.println("tablename not exists");
+            transaction.close();
+            transaction = null;
         }
+        if (transaction == null) {
+            transaction = next.begin();
+        }
+        out.println("using tablename");
     }
 
     public void showTables() throws Exception {
-        for (String tablename : recordsCount.keySet()) {
-            System.out.format("%s %d\n", tablename, recordsCount.get(tablename));
+        for (Map.Entry<String, Integer> entry : provider.getTableSizes().entrySet()) {
+            int size = entry.getValue();
+            if (transaction != null && transaction.getTable().getName().equals(entry.getKey())) {
+                size = transaction.size();
+            }
+            out.println(entry.getKey() + " " + size);
         }
     }
 
-    public void put(String key, String value) throws Exception {
-        if (name == null) {
-            throw new Exception("The table is not selected");
+    public void showFilters() throws Exception {
+        for (Table resident : provider.getTables()) {
+            long negatives = resident.getFilterNegatives();
+            long falsePositives = resident.getFilterFalsePositives();
+            double rate = negatives + falsePositives == 0 ? 0 : (double) falsePositives / (negatives + falsePositives);
+            out.println(String.format("%s %d %d %.4f", resident.getName(), negatives, falsePositives, rate));
         }
-        if (table.containsKey(key)) {
-            System.out.println("overwrite");
-            System.out.println(table.get(key));
-            table.put(key, value);
+    }
+
+    public void commit() throws Exception {
+        Transaction selected = current();
+        out.println(Integer.toString(selected.commit()));
+        provider.evict(selected.getTable());
+    }
+
+    public void rollback() throws Exception {
+        out.println(Integer.toString(current().rollback()));
+    }
+
+    public void importFile(String file, RecordFormat format) throws Exception {
+        Transaction selected = current();
+        int changes = selected.getChangesCount();
+        if (changes > 0) {
+            out.println(changes + " unsaved changes");
+            return;
+        }
+        Table target = selected.getTable();
+        selected.close();
+        transaction = null;
+        long count;
+        try (RecordSource source = format.openSource(Paths.get(file))) {
+            count = target.importRecords(source, format);
+        } finally {
+            transaction = target.begin();
+        }
+        provider.evict(target);
+        out.println("imported " + count);
+    }
+
+    public void exportFile(String file, RecordFormat format) throws Exception {
+        Transaction selected = current();
+        long count;
+        try (RecordSink sink = format.openSink(Paths.get(file))) {
+            count = selected.getTable().exportRecords(sink, format);
+        }
+        out.println("exported " + count);
+    }
+
+    public void stats() throws Exception {
+        for (String line : Metrics.report()) {
+            out.println(line);
+        }
+    }
+
+    public void put(String key, String value) throws Exception {
+        put(key, value, 0);
+    }
+
+    public void put(String key, String value, long ttlMillis) throws Exception {
+        Transaction selected = current();
+        long start = System.nanoTime();
+        String old = selected.put(key, encode(selected, value), ttlMillis);
+        PUT.record(System.nanoTime() - start);
+        if (old != null) {
+            out.println("overwrite");
+            out.println(display(selected, old));
         } else {
-            table.put(key, value);
-            recordsCount.put(name, recordsCount.get(name) + 1);
-            System.out.println("new");
+            out.println("new");
         }
     }
 
     public void get(String key) throws Exception {
-        if (name == null) {
-            throw new Exception("The table is not selected");
-        }
-        if (table.containsKey(key)) {
-            System.out.println("found");
-            System.out.println(table.get(key));
+        Transaction selected = current();
+        long start = System.nanoTime();
+        String value = selected.get(key);
+        GET.record(System.nanoTime() - start);
+        if (value != null) {
+            out.println("found");
+            out.println(display(selected, value));
         } else {
-            System.out.println("not found");
+            out.println("not found");
         }
     }
 
     public void remove(String key) throws Exception {
-        if (name == null) {
-            throw new Exception("The table is not selected");
-        }
-        if (table.containsKey(key)) {
-            table.remove(key);
-            recordsCount.put(name, recordsCount.get(name) - 1);
-            System.out.println("removed");
+        Transaction selected = current();
+        long start = System.nanoTime();
+        String old = selected.remove(key);
+        REMOVE.record(System.nanoTime() - start);
+        if (old != null) {
+            out.println("removed");
         } else {
-            System.out.println("not found");
+            out.println("not found");
         }
     }
 
     public void list() throws Exception {
-        if (name == null) {
-            throw new Exception("The table is not selected");
+        Transaction selected = current();
+        long start = System.nanoTime();
+        boolean first = true;
+        for (String key : selected.list()) {
+            if (!first) {
+                out.print(", ");
+            }
+            out.print(key);
+            first = false;
+        }
+        out.println("");
+        LIST.record(System.nanoTime() - start);
+    }
+
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; --i) {
+            if (prefix.charAt(i) != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+            }
+        }
+        return null;
+    }
+
+    public void list(String prefix) throws Exception {
+        Transaction selected = current();
+        long start = System.nanoTime();
+        Iterator<Map.Entry<String, String>> records = selected.scan(prefix, prefixEnd(prefix));
+        boolean first = true;
+        while (records.hasNext()) {
+            String key = records.next().getKey();
+            if (!first) {
+                out.print(", ");
+            }
+            out.print(key);
+            first = false;
+        }
+        out.println("");
+        LIST.record(System.nanoTime() - start);
+    }
+
+    public void scan(String from, String to) throws Exception {
+        Transaction selected = current();
+        Iterator<Map.Entry<String, String>> records = selected.scan(from, to);
+        while (records.hasNext()) {
+            Map.Entry<String, String> record = records.next();
+            out.println(record.getKey() + " " + display(selected, record.getValue()));
         }
-        System.out.println(String.join(", ", table.keySet()));
     }
 }
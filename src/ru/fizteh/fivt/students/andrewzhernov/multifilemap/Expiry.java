@@ -0,0 +1,104 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class Expiry {
+    static final char MARK = '\uFFFF';
+
+    public static String encode(String value, long deadline) {
+        if (deadline > 0) {
+            return MARK + Long.toString(deadline) + ':' + value;
+        }
+        if (!value.isEmpty() && value.charAt(0) == MARK) {
+            return MARK + ":" + value;
+        }
+        return value;
+    }
+
+    private static int separatorOf(String stored) {
+        if (stored.isEmpty() || stored.charAt(0) != MARK) {
+            return -1;
+        }
+        int separator = stored.indexOf(':');
+        if (separator < 1 || separator > 20) {
+            return -1;
+        }
+        for (int i = 1; i < separator; ++i) {
+            if (stored.charAt(i) < '0' || stored.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return separator;
+    }
+
+    public static boolean isWellFormed(String stored) {
+        return stored.isEmpty() || stored.charAt(0) != MARK || separatorOf(stored) > 0;
+    }
+
+    public static long deadlineOf(String stored) {
+        int separator = separatorOf(stored);
+        if (separator <= 1) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(stored.substring(1, separator));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static String valueOf(String stored) {
+        int separator = separatorOf(stored);
+        return separator < 0 ? stored : stored.substring(separator + 1);
+    }
+
+    public static boolean isExpired(String stored, long now) {
+        long deadline = deadlineOf(stored);
+        return deadline > 0 && deadline <= now;
+    }
+
+    public static String live(String stored, long now) {
+        return stored == null || isExpired(stored, now) ? null : valueOf(stored);
+    }
+
+    static Iterator<Map.Entry<String, String>> live(final Iterator<Map.Entry<String, String>> stored,
+            final long now, final boolean decode) {
+        return new Iterator<Map.Entry<String, String>>() {
+            private Map.Entry<String, String> next = advance();
+
+            private Map.Entry<String, String> advance() {
+                while (stored.hasNext()) {
+                    Map.Entry<String, String> record = stored.next();
+                    if (!isExpired(record.getValue(), now)) {
+                        return decode ? new AbstractMap.SimpleImmutableEntry<String, String>(record.getKey(),
+                                valueOf(record.getValue())) : record;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> current = next;
+                next = advance();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
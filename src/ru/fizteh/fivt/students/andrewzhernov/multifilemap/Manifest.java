@@ -0,0 +1,150 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+// The CRC32 covers only the manifest's own bytes. Shard files are matched
+// by size and modification time; their contents are not verified.
+public class Manifest {
+    public static final String FILENAME = "manifest";
+    private static final int VERSION = 4;
+
+    private int recordsCount;
+    private ShardLayout layout;
+    private long[] shardSizes;
+    private long[] shardTimes;
+
+    private Manifest(int recordsCount, ShardLayout layout, long[] shardSizes, long[] shardTimes) {
+        this.recordsCount = recordsCount;
+        this.layout = layout;
+        this.shardSizes = shardSizes;
+        this.shardTimes = shardTimes;
+    }
+
+    public int getRecordsCount() {
+        return recordsCount;
+    }
+
+    private static long sizeOf(Path file) throws Exception {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    private static long timeOf(Path file) throws Exception {
+        return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+    }
+
+    private boolean matches(Path file, int index) throws Exception {
+        return sizeOf(file) == shardSizes[index] && timeOf(file) == shardTimes[index];
+    }
+
+    public static Manifest build(Path tablePath, int recordsCount) throws Exception {
+        ShardLayout layout = ShardLayout.read(tablePath);
+        long[] shardSizes = new long[layout.getBuckets() + 1];
+        long[] shardTimes = new long[layout.getBuckets() + 1];
+        Path segmentPath = tablePath.resolve(SortedTable.SEGMENT);
+        shardSizes[layout.getBuckets()] = sizeOf(segmentPath);
+        shardTimes[layout.getBuckets()] = timeOf(segmentPath);
+        for (int i = 0; i < layout.getDirs(); ++i) {
+            if (Files.isDirectory(layout.dirPath(tablePath, i))) {
+                for (int j = 0; j < layout.getFiles(); ++j) {
+                    Path tableFile = layout.shardPath(tablePath, i * layout.getFiles() + j);
+                    shardSizes[i * layout.getFiles() + j] = sizeOf(tableFile);
+                    shardTimes[i * layout.getFiles() + j] = timeOf(tableFile);
+                }
+            }
+        }
+        return new Manifest(recordsCount, layout, shardSizes, shardTimes);
+    }
+
+    public static Manifest read(Path tablePath) {
+        Path manifestPath = tablePath.resolve(FILENAME);
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+        try {
+            ShardLayout layout = ShardLayout.read(tablePath);
+            byte[] bytes = Files.readAllBytes(manifestPath);
+            if (bytes.length < 8) {
+                return null;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes, 0, bytes.length - 8);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (input.readInt() != VERSION || input.readInt() != layout.getBits()
+                    || input.readBoolean() != layout.isMixed()) {
+                return null;
+            }
+            int recordsCount = input.readInt();
+            long[] shardSizes = new long[layout.getBuckets() + 1];
+            long[] shardTimes = new long[layout.getBuckets() + 1];
+            for (int i = 0; i < shardSizes.length; ++i) {
+                shardSizes[i] = input.readLong();
+                shardTimes[i] = input.readLong();
+            }
+            if (input.readLong() != checksum.getValue()) {
+                return null;
+            }
+            return new Manifest(recordsCount, layout, shardSizes, shardTimes);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public boolean isStale(Path tablePath) {
+        try {
+            ShardLayout current = ShardLayout.read(tablePath);
+            if (current.getBits() != layout.getBits() || current.isMixed() != layout.isMixed()) {
+                return true;
+            }
+            if (!matches(tablePath.resolve(SortedTable.SEGMENT), layout.getBuckets())) {
+                return true;
+            }
+        } catch (Exception e) {
+            return true;
+        }
+        int files = layout.getFiles();
+        for (int i = 0; i < layout.getDirs(); ++i) {
+            boolean empty = true;
+            for (int j = 0; j < files; ++j) {
+                empty &= shardSizes[i * files + j] == 0;
+            }
+            if (empty && !Files.isDirectory(layout.dirPath(tablePath, i))) {
+                continue;
+            }
+            for (int j = 0; j < files; ++j) {
+                Path tableFile = layout.shardPath(tablePath, i * files + j);
+                try {
+                    if (!matches(tableFile, i * files + j)) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void write(Path tablePath, boolean force) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(VERSION);
+        output.writeInt(layout.getBits());
+        output.writeBoolean(layout.isMixed());
+        output.writeInt(recordsCount);
+        for (int i = 0; i < shardSizes.length; ++i) {
+            output.writeLong(shardSizes[i]);
+            output.writeLong(shardTimes[i]);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+        output.writeLong(checksum.getValue());
+        output.close();
+        Utils.replace(tablePath.resolve(FILENAME), bytes.toByteArray(), force);
+    }
+}
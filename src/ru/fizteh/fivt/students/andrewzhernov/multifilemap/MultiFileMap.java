@@ -1,15 +1,32 @@
 package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
 
+import java.util.Arrays;
 import java.util.Scanner;
 
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.result.ResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.result.StreamResultSink;
+import ru.fizteh.fivt.students.andrewzhernov.server.Server;
+import ru.fizteh.fivt.students.andrewzhernov.server.Session;
+import ru.fizteh.fivt.students.andrewzhernov.server.SessionFactory;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+
 public class MultiFileMap {
     public static void main(String[] args) {
         try {
-            DataBase dataBase = new DataBase(System.getProperty("fizteh.db.dir"));
-            if (args.length == 0) {
-                interactiveMode(dataBase);
+            TableProvider provider = new TableProvider(System.getProperty("fizteh.db.dir"));
+            int port = Server.getPort("fizteh.db.port");
+            if (Boolean.parseBoolean(System.getProperty("fizteh.db.jmx", Boolean.toString(port >= 0)))) {
+                Metrics.registerMBean();
+            }
+            ResultSink out = new StreamResultSink(System.out);
+            DataBase dataBase = new DataBase(provider, out);
+            if (port >= 0) {
+                serverMode(port, provider);
+            } else if (args.length == 0) {
+                interactiveMode(dataBase, out);
             } else {
-                batchMode(args, dataBase);
+                batchMode(args, dataBase, out);
             }
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -17,27 +34,68 @@ public class MultiFileMap {
         }
     }
 
-    public static void interactiveMode(DataBase dataBase) throws Exception {
+    public static void interactiveMode(DataBase dataBase, ResultSink out) throws Exception {
         Scanner input = new Scanner(System.in);
-        System.out.print("$ ");
+        out.print("$ ");
+        out.flush();
         while (input.hasNextLine()) {
             try {
                 executeCommand(parseCommand(input.nextLine()), dataBase);
             } catch (Exception e) {
+                out.flush();
                 System.err.println(e.getMessage());
             }
-            System.out.print("$ ");
+            out.print("$ ");
+            out.flush();
         }
-        dataBase.saveTable();
+        dataBase.saveTables();
+        out.flush();
         input.close(); 
     }
 
-    public static void batchMode(String[] args, DataBase dataBase) throws Exception {
+    public static void serverMode(int port, final TableProvider provider) throws Exception {
+        Server server = new Server(port, new SessionFactory() {
+            @Override
+            public Session open(ResultSink out) {
+                final DataBase dataBase = new DataBase(provider, out);
+                return new Session() {
+                    @Override
+                    public void execute(String command) throws Exception {
+                        executeCommand(parseCommand(command), dataBase);
+                    }
+
+                    @Override
+                    public void close() throws Exception {
+                        dataBase.close();
+                    }
+                };
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    provider.saveTables();
+                } catch (Exception e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        });
+        server.bind();
+        System.out.println("listening on port " + server.getLocalPort());
+        server.run();
+    }
+
+    public static void batchMode(String[] args, DataBase dataBase, ResultSink out) throws Exception {
         String[] input = parseInput(args);
-        for (String cmd : input) {
-            executeCommand(parseCommand(cmd), dataBase);
+        try {
+            for (String cmd : input) {
+                executeCommand(parseCommand(cmd), dataBase);
+            }
+            dataBase.saveTables();
+        } finally {
+            out.flush();
         }
-        dataBase.saveTable();
     }
 
     private static String[] parseInput(String[] args) throws Exception {
@@ -52,13 +110,36 @@ public class MultiFileMap {
         return cmd.trim().split("\\s+");
     }
 
+    private static String join(String[] cmd, int from) {
+        return String.join(" ", Arrays.copyOfRange(cmd, from, cmd.length));
+    }
+
     public static void executeCommand(String[] cmd, DataBase dataBase) throws Exception {
         if (cmd.length > 0 && cmd[0].length() > 0) {
             if (cmd[0].equals("create")) {
-                if (cmd.length != 2) {
-                    throw new Exception("Usage: create <tablename>");
+                String usage = "Usage: create <tablename> [(<type>, ...)] [sorted|compressed]";
+                if (cmd.length < 2) {
+                    throw new Exception(usage);
+                }
+                String options = join(cmd, 2);
+                String signature = null;
+                if (options.startsWith("(")) {
+                    int end = options.indexOf(')');
+                    if (end < 0) {
+                        throw new Exception(usage);
+                    }
+                    signature = options.substring(0, end + 1);
+                    options = options.substring(end + 1).trim();
+                }
+                if (options.isEmpty()) {
+                    dataBase.create(cmd[1], false, false, signature);
+                } else if (options.equals("sorted")) {
+                    dataBase.create(cmd[1], true, false, signature);
+                } else if (options.equals("compressed")) {
+                    dataBase.create(cmd[1], false, true, signature);
+                } else {
+                    throw new Exception(usage);
                 }
-                dataBase.create(cmd[1]);
             } else if (cmd[0].equals("drop")) {
                 if (cmd.length != 2) {
                     throw new Exception("Usage: drop <tablename>");
@@ -71,15 +152,30 @@ public class MultiFileMap {
                 dataBase.use(cmd[1]);
             } else if (cmd[0].equals("show")) {
                 if (cmd.length != 2) {
-                    throw new Exception("Usage: show tables");
+                    throw new Exception("Usage: show tables|filters");
                 } else if (cmd[1].equals("tables")) {
                     dataBase.showTables();
+                } else if (cmd[1].equals("filters")) {
+                    dataBase.showFilters();
                 }
             } else if (cmd[0].equals("put")) {
-                if (cmd.length != 3) {
-                    throw new Exception("Usage: put <key> <value>");
+                String usage = "Usage: put <key> <value> [ttl <ms>]";
+                long ttl = 0;
+                if (cmd.length >= 5 && cmd[cmd.length - 2].equals("ttl")) {
+                    try {
+                        ttl = Long.parseLong(cmd[cmd.length - 1]);
+                    } catch (NumberFormatException e) {
+                        throw new Exception(usage);
+                    }
+                    if (ttl <= 0) {
+                        throw new Exception("ttl must be a positive number of milliseconds");
+                    }
+                    cmd = Arrays.copyOf(cmd, cmd.length - 2);
+                }
+                if (cmd.length < 3 || (cmd.length > 3 && !dataBase.hasSchema())) {
+                    throw new Exception(usage);
                 }
-                dataBase.put(cmd[1], cmd[2]);
+                dataBase.put(cmd[1], join(cmd, 2), ttl);
             } else if (cmd[0].equals("get")) {
                 if (cmd.length != 2) {
                     throw new Exception("Usage: get <key>");
@@ -91,15 +187,49 @@ public class MultiFileMap {
                 }
                 dataBase.remove(cmd[1]);
             } else if (cmd[0].equals("list")) {
+                if (cmd.length == 1) {
+                    dataBase.list();
+                } else if (cmd.length == 2) {
+                    dataBase.list(cmd[1]);
+                } else {
+                    throw new Exception("Usage: list [<prefix>]");
+                }
+            } else if (cmd[0].equals("scan")) {
+                if (cmd.length != 3) {
+                    throw new Exception("Usage: scan <from> <to>");
+                }
+                dataBase.scan(cmd[1], cmd[2]);
+            } else if (cmd[0].equals("commit")) {
+                if (cmd.length != 1) {
+                    throw new Exception("Usage: commit");
+                }
+                dataBase.commit();
+            } else if (cmd[0].equals("rollback")) {
+                if (cmd.length != 1) {
+                    throw new Exception("Usage: rollback");
+                }
+                dataBase.rollback();
+            } else if (cmd[0].equals("import") || cmd[0].equals("export")) {
+                if (cmd.length != 2 && cmd.length != 3) {
+                    throw new Exception("Usage: " + cmd[0] + " <file> [tsv|native]");
+                }
+                RecordFormat format = cmd.length == 3 ? RecordFormat.parse(cmd[2]) : RecordFormat.TSV;
+                if (cmd[0].equals("import")) {
+                    dataBase.importFile(cmd[1], format);
+                } else {
+                    dataBase.exportFile(cmd[1], format);
+                }
+            } else if (cmd[0].equals("stats")) {
                 if (cmd.length != 1) {
-                    throw new Exception("Usage: list");
+                    throw new Exception("Usage: stats");
                 }
-                dataBase.list();
+                dataBase.stats();
             } else if (cmd[0].equals("exit")) {
                 if (cmd.length != 1) {
                     throw new Exception("Usage: exit");
                 }
-                dataBase.saveTable();
+                dataBase.saveTables();
+                dataBase.flush();
                 System.exit(0);
             } else {
                 throw new Exception(cmd[0] + ": no such command");
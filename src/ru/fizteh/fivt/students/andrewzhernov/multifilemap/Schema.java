@@ -0,0 +1,246 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Schema {
+    public static final String FILENAME = "signature.tsv";
+
+    private ColumnType[] types;
+    private int[] offsets;
+    private int firstVariable;
+    private int bitmapSize;
+
+    public Schema(List<ColumnType> types) throws Exception {
+        if (types.isEmpty()) {
+            throw new Exception("Schema must have at least one column");
+        }
+        this.types = types.toArray(new ColumnType[types.size()]);
+        bitmapSize = (this.types.length + 7) / 8;
+        offsets = new int[this.types.length];
+        firstVariable = this.types.length;
+        int offset = bitmapSize;
+        for (int i = 0; i < this.types.length; ++i) {
+            offsets[i] = i <= firstVariable ? offset : -1;
+            if (this.types[i].isFixed()) {
+                offset += this.types[i].getWidth();
+            } else if (firstVariable == this.types.length) {
+                firstVariable = i;
+            }
+        }
+    }
+
+    public static Schema parse(String signature) throws Exception {
+        String body = signature.trim();
+        if (body.startsWith("(") && body.endsWith(")")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        List<ColumnType> types = new ArrayList<ColumnType>();
+        for (String name : body.split(",")) {
+            if (!name.trim().isEmpty()) {
+                types.add(ColumnType.parse(name.trim()));
+            }
+        }
+        return new Schema(types);
+    }
+
+    public static Schema read(Path tablePath) throws Exception {
+        Path schemaPath = tablePath.resolve(FILENAME);
+        if (!Files.exists(schemaPath)) {
+            return null;
+        }
+        List<ColumnType> types = new ArrayList<ColumnType>();
+        for (String name : new String(Files.readAllBytes(schemaPath), StandardCharsets.UTF_8).trim().split("\\s+")) {
+            types.add(ColumnType.parse(name));
+        }
+        return new Schema(types);
+    }
+
+    public void write(Path tablePath, boolean force) throws Exception {
+        StringBuilder line = new StringBuilder();
+        for (ColumnType type : types) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(type.getName());
+        }
+        Utils.replace(tablePath.resolve(FILENAME), (line + "\n").getBytes(StandardCharsets.UTF_8), force);
+    }
+
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    public ColumnType getType(int column) {
+        return types[column];
+    }
+
+    int getOffset(int column) {
+        return offsets[column];
+    }
+
+    int getFirstVariable() {
+        return firstVariable;
+    }
+
+    int getBitmapSize() {
+        return bitmapSize;
+    }
+
+    public TupleBuilder newTuple() {
+        return new TupleBuilder(this);
+    }
+
+    public Tuple parseTuple(String text) throws Exception {
+        String body = text.trim();
+        if (!body.startsWith("[") || !body.endsWith("]")) {
+            throw new Exception("wrong type (value must be a list like [1, \"text\", null])");
+        }
+        List<String> tokens = new ArrayList<String>();
+        List<Boolean> quoted = new ArrayList<Boolean>();
+        int i = 1;
+        int end = body.length() - 1;
+        while (i < end) {
+            while (i < end && Character.isWhitespace(body.charAt(i))) {
+                ++i;
+            }
+            StringBuilder token = new StringBuilder();
+            boolean isQuoted = i < end && body.charAt(i) == '"';
+            if (isQuoted) {
+                ++i;
+                while (i < end && body.charAt(i) != '"') {
+                    if (body.charAt(i) == '\\' && i + 1 < end) {
+                        ++i;
+                    }
+                    token.append(body.charAt(i++));
+                }
+                if (i >= end) {
+                    throw new Exception("wrong type (unterminated string)");
+                }
+                ++i;
+                while (i < end && Character.isWhitespace(body.charAt(i))) {
+                    ++i;
+                }
+            } else {
+                while (i < end && body.charAt(i) != ',') {
+                    token.append(body.charAt(i++));
+                }
+            }
+            if (i < end && body.charAt(i) != ',') {
+                throw new Exception("wrong type (expected , after column " + tokens.size() + ")");
+            }
+            ++i;
+            tokens.add(isQuoted ? token.toString() : token.toString().trim());
+            quoted.add(isQuoted);
+        }
+        if (tokens.size() != types.length) {
+            throw new Exception("wrong type (expected " + types.length + " columns, got " + tokens.size() + ")");
+        }
+        TupleBuilder tuple = newTuple();
+        for (int column = 0; column < types.length; ++column) {
+            String token = tokens.get(column);
+            if (!quoted.get(column) && token.equals("null")) {
+                tuple.setNull(column);
+                continue;
+            }
+            if ((types[column] == ColumnType.STRING) != quoted.get(column)) {
+                throw new Exception("wrong type (column " + column + " must be " + types[column].getName() + ")");
+            }
+            try {
+                switch (types[column]) {
+                    case INT:
+                        tuple.setInt(column, Integer.parseInt(token));
+                        break;
+                    case LONG:
+                        tuple.setLong(column, Long.parseLong(token));
+                        break;
+                    case BYTE:
+                        tuple.setByte(column, Byte.parseByte(token));
+                        break;
+                    case FLOAT:
+                        tuple.setFloat(column, Float.parseFloat(token));
+                        break;
+                    case DOUBLE:
+                        tuple.setDouble(column, Double.parseDouble(token));
+                        break;
+                    case BOOLEAN:
+                        if (!token.equals("true") && !token.equals("false")) {
+                            throw new NumberFormatException();
+                        }
+                        tuple.setBoolean(column, token.equals("true"));
+                        break;
+                    default:
+                        tuple.setString(column, token);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new Exception("wrong type (" + token + " is not " + types[column].getName() + ")");
+            }
+        }
+        return tuple.build();
+    }
+
+    public String format(Tuple tuple) {
+        StringBuilder text = new StringBuilder("[");
+        for (int column = 0; column < types.length; ++column) {
+            if (column > 0) {
+                text.append(", ");
+            }
+            if (tuple.isNull(column)) {
+                text.append("null");
+                continue;
+            }
+            switch (types[column]) {
+                case INT:
+                    text.append(tuple.getInt(column));
+                    break;
+                case LONG:
+                    text.append(tuple.getLong(column));
+                    break;
+                case BYTE:
+                    text.append(tuple.getByte(column));
+                    break;
+                case FLOAT:
+                    text.append(tuple.getFloat(column));
+                    break;
+                case DOUBLE:
+                    text.append(tuple.getDouble(column));
+                    break;
+                case BOOLEAN:
+                    text.append(tuple.getBoolean(column));
+                    break;
+                default:
+                    text.append('"').append(tuple.getString(column).replace("\\", "\\\\").replace("\"", "\\\""))
+                            .append('"');
+                    break;
+            }
+        }
+        return text.append(']').toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Schema && Arrays.equals(types, ((Schema) other).types);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(types);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = 0; i < types.length; ++i) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(types[i].getName());
+        }
+        return text.append(')').toString();
+    }
+}
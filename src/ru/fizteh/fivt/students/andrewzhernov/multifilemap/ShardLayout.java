@@ -0,0 +1,153 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShardLayout {
+    public static final String FILENAME = "layout";
+    static final int MAX_BITS = 16;
+    static final ShardLayout LEGACY = new ShardLayout(8, false);
+    private static final int VERSION = 1;
+
+    private int bits;
+    private boolean mixed;
+    private int dirBits;
+    private int dirs;
+    private int files;
+
+    ShardLayout(int bits, boolean mixed) {
+        this.bits = bits;
+        this.mixed = mixed;
+        dirBits = (bits + 1) / 2;
+        dirs = 1 << dirBits;
+        files = 1 << (bits - dirBits);
+    }
+
+    public static ShardLayout forSize(long records, int shardRecords) {
+        int bits = 0;
+        while (bits < MAX_BITS && records > (long) shardRecords << bits) {
+            ++bits;
+        }
+        return new ShardLayout(bits, true);
+    }
+
+    public static ShardLayout read(Path tablePath) throws Exception {
+        Path layoutPath = tablePath.resolve(FILENAME);
+        if (!Files.exists(layoutPath)) {
+            return LEGACY;
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(layoutPath)))) {
+            if (input.readInt() != VERSION) {
+                throw new Exception(layoutPath + ": unsupported shard layout version");
+            }
+            int bits = input.readInt();
+            boolean mixed = input.readBoolean();
+            if (bits < 0 || bits > MAX_BITS) {
+                throw new Exception(layoutPath + ": corrupted shard layout");
+            }
+            return new ShardLayout(bits, mixed);
+        } catch (EOFException e) {
+            throw new Exception(layoutPath + ": truncated shard layout");
+        }
+    }
+
+    public void write(Path tablePath, boolean force) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(VERSION);
+            output.writeInt(bits);
+            output.writeBoolean(mixed);
+        }
+        Utils.replace(tablePath.resolve(FILENAME), bytes.toByteArray(), force);
+    }
+
+    static List<Path> listDirs(Path tablePath) throws Exception {
+        List<Path> dirs = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tablePath, "[0-9]*.dir")) {
+            for (Path entry : stream) {
+                if (Files.isDirectory(entry)) {
+                    dirs.add(entry);
+                }
+            }
+        }
+        return dirs;
+    }
+
+    public ShardLayout resize(long records, int shardRecords) {
+        long capacity = (long) shardRecords << bits;
+        if ((records > capacity && bits < MAX_BITS) || (records < capacity / 4 && bits > 0) || !mixed) {
+            ShardLayout resized = forSize(records, shardRecords);
+            if (resized.bits != bits || resized.mixed != mixed) {
+                return resized;
+            }
+        }
+        return this;
+    }
+
+    public static int mixedHash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & Integer.MAX_VALUE;
+    }
+
+    public int hash(String key) {
+        return mixed ? mixedHash(key) : key.hashCode() & Integer.MAX_VALUE;
+    }
+
+    public int bucketOfHash(int hash) {
+        return (hash & (dirs - 1)) * files + (hash >>> dirBits & (files - 1));
+    }
+
+    public int hashOfBucket(int bucket) {
+        return bucket / files | (bucket % files) << dirBits;
+    }
+
+    public int bucketOf(String key) {
+        return bucketOfHash(hash(key));
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public boolean isMixed() {
+        return mixed;
+    }
+
+    public int getBuckets() {
+        return dirs * files;
+    }
+
+    public int getDirs() {
+        return dirs;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public Path dirPath(Path tablePath, int dir) {
+        return tablePath.resolve(Integer.toString(dir) + ".dir");
+    }
+
+    public Path shardPath(Path tablePath, int bucket) {
+        return dirPath(tablePath, bucket / files).resolve(Integer.toString(bucket % files) + ".dat");
+    }
+
+    @Override
+    public String toString() {
+        return dirs + "x" + files + (mixed ? "" : " legacy");
+    }
+}
@@ -0,0 +1,117 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.BlockReader;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordReader;
+import ru.fizteh.fivt.students.andrewzhernov.storage.StorageEngine;
+
+public class ShardLoader extends RecursiveTask<List<Map<String, String>>> {
+    private static final long serialVersionUID = 1L;
+
+    private static final Histogram LOAD = Metrics.histogram("shard.load");
+
+    private Path shardPath;
+    private ShardLayout layout;
+    private int bucket;
+    private int stripes;
+    private StorageEngine engine;
+
+    public ShardLoader(Path shardPath, ShardLayout layout, int bucket, int stripes, StorageEngine engine) {
+        this.shardPath = shardPath;
+        this.layout = layout;
+        this.bucket = bucket;
+        this.stripes = stripes;
+        this.engine = engine;
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    public List<Map<String, String>> load() throws Exception {
+        long start = System.nanoTime();
+        List<Map<String, String>> shards = new ArrayList<Map<String, String>>(stripes);
+        for (int i = 0; i < stripes; ++i) {
+            shards.add(engine.newMap());
+        }
+        if (BlockReader.isBlockFile(shardPath)) {
+            loadBlocks(shards);
+        } else {
+            try (RecordReader reader = new RecordReader(shardPath)) {
+                while (reader.hasNext()) {
+                    add(shards, reader.readString(), reader.readString());
+                }
+            }
+        }
+        LOAD.record(System.nanoTime() - start);
+        return shards;
+    }
+
+    private void add(List<Map<String, String>> shards, String key, String value) throws Exception {
+        if (key == null || value == null) {
+            throw new Exception(shardPath + ": unexpected tombstone");
+        }
+        int hash = layout.hash(key);
+        if (layout.bucketOfHash(hash) != bucket) {
+            throw new Exception(shardPath + ": key '" + key + "' doesn't belong to this file");
+        }
+        shards.get(hash >>> layout.getBits() & (stripes - 1)).put(key, value);
+    }
+
+    private void loadBlocks(List<Map<String, String>> shards) throws Exception {
+        final List<BlockReader.Block> blocks;
+        try (BlockReader reader = new BlockReader(shardPath)) {
+            blocks = reader.readBlocks();
+        }
+        final String[][] decoded = new String[blocks.size()][];
+        List<RecursiveAction> decoders = new ArrayList<RecursiveAction>();
+        for (int i = 0; i < blocks.size(); ++i) {
+            final int index = i;
+            decoders.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        decoded[index] = blocks.get(index).decode();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            });
+        }
+        try {
+            ForkJoinTask.invokeAll(decoders);
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw new Exception(cause.getMessage());
+        }
+        for (String[] records : decoded) {
+            for (int i = 0; i < records.length; i += 2) {
+                add(shards, records[i], records[i + 1]);
+            }
+        }
+    }
+
+    @Override
+    protected List<Map<String, String>> compute() {
+        try {
+            return load();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
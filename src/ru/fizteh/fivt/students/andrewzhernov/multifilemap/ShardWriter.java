@@ -0,0 +1,100 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
+import ru.fizteh.fivt.students.andrewzhernov.storage.BlockWriter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.BloomFilter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RateLimiter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordWriter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.ThrottledOutputStream;
+
+public class ShardWriter implements Callable<Void> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Histogram SAVE = Metrics.histogram("shard.save");
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("bytes.written");
+
+    private Path shardPath;
+    private List<Map.Entry<String, String>> records;
+    private boolean force;
+    private boolean compressed;
+    private int level;
+    private RateLimiter limiter;
+    private boolean latin1;
+
+    public ShardWriter(Path shardPath, List<Map.Entry<String, String>> records, boolean force, boolean compressed,
+            int level) {
+        this(shardPath, records, force, compressed, level, null, false);
+    }
+
+    public ShardWriter(Path shardPath, List<Map.Entry<String, String>> records, boolean force, boolean compressed,
+            int level, RateLimiter limiter, boolean latin1) {
+        this.shardPath = shardPath;
+        this.records = records;
+        this.force = force;
+        this.compressed = compressed;
+        this.level = level;
+        this.limiter = limiter;
+        this.latin1 = latin1;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        long start = System.nanoTime();
+        Path temp = Paths.get(shardPath.toString() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            if (limiter != null && limiter.isLimited()) {
+                stream = new ThrottledOutputStream(stream, limiter);
+            }
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+            if (compressed) {
+                try (BlockWriter writer = new BlockWriter(output, level, latin1)) {
+                    for (Map.Entry<String, String> record : records) {
+                        writer.write(record.getKey(), record.getValue());
+                    }
+                    writer.finish();
+                }
+            } else {
+                for (Map.Entry<String, String> record : records) {
+                    RecordWriter.writeString(output, record.getKey());
+                    RecordWriter.writeString(output, record.getValue(), latin1);
+                }
+            }
+            output.flush();
+            if (force) {
+                channel.force(false);
+            }
+            BYTES_WRITTEN.add(channel.size());
+        }
+        Files.deleteIfExists(BloomFilter.sidecar(shardPath));
+        Files.move(temp, shardPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (force) {
+            AppendLog.syncDirectory(shardPath.getParent());
+        }
+        BloomFilter filter = new BloomFilter(records.size());
+        for (Map.Entry<String, String> record : records) {
+            filter.add(record.getKey());
+        }
+        filter.write(shardPath);
+        SAVE.record(System.nanoTime() - start);
+        return null;
+    }
+}
@@ -0,0 +1,1047 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
+import ru.fizteh.fivt.students.andrewzhernov.storage.BloomFilter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RateLimiter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordWriter;
+
+public class ShardedTable extends Table {
+    static final String COMPRESSED = "compressed";
+    static final String RESHARD = "reshard";
+    private static final String RESHARD_TEMP = "reshard.tmp";
+    private static final String RESHARD_OLD = "reshard.old";
+    private static final String IMPORT_SUFFIX = ".import";
+    private static final int IMPORT_BUFFER = 16 * 1024;
+    private static final int IMPORT_SPILL_BITS = 8;
+    private static final int STRIPE_BITS = 8;
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("bytes.written");
+    private static final Histogram RESHARD_TIME = Metrics.histogram("shard.reshard");
+    private static final Histogram CHECKPOINT = Metrics.histogram("checkpoint");
+    private static final LongAdder COPIES = Metrics.counter("checkpoint.copies");
+    private static ExecutorService writers;
+    private static ForkJoinPool readers;
+
+    private volatile Buckets buckets;
+    private ReentrantLock saveLock = new ReentrantLock();
+    private volatile boolean changed;
+    private LongAdder size;
+    private LongAdder memorySize;
+    private boolean compressed;
+
+    public ShardedTable(String name, Path path, TableConfig config) {
+        super(name, path, config);
+        compressed = Files.exists(path.resolve(COMPRESSED));
+        buckets = new Buckets(ShardLayout.forSize(0, config.getShardRecords()));
+        size = new LongAdder();
+        memorySize = new LongAdder();
+    }
+
+    private static class Buckets {
+        private ShardLayout layout;
+        private int mask;
+        private int stripes;
+        private AtomicReferenceArray<Map<String, String>> shards;
+        private ReentrantLock[] locks;
+        private boolean[] dirty;
+        private boolean[] frozen;
+        private ReentrantLock[] fileLocks;
+        private BloomFilter[] filters;
+        private boolean[] unfiltered;
+
+        Buckets(ShardLayout layout) {
+            this.layout = layout;
+            int bits = Math.max(layout.getBits(), STRIPE_BITS);
+            mask = (1 << bits) - 1;
+            stripes = 1 << (bits - layout.getBits());
+            shards = new AtomicReferenceArray<Map<String, String>>(mask + 1);
+            locks = new ReentrantLock[mask + 1];
+            for (int i = 0; i < locks.length; ++i) {
+                locks[i] = new ReentrantLock();
+            }
+            dirty = new boolean[mask + 1];
+            frozen = new boolean[mask + 1];
+            fileLocks = new ReentrantLock[layout.getBuckets()];
+            for (int i = 0; i < fileLocks.length; ++i) {
+                fileLocks[i] = new ReentrantLock();
+            }
+            filters = new BloomFilter[layout.getBuckets()];
+            unfiltered = new boolean[layout.getBuckets()];
+        }
+
+        int bucketOf(String key) {
+            return layout.hash(key) & mask;
+        }
+
+        int fileOf(int bucket) {
+            return layout.bucketOfHash(bucket);
+        }
+
+        int stripeOf(int file, int stripe) {
+            return layout.hashOfBucket(file) | stripe << layout.getBits();
+        }
+
+        List<Map.Entry<String, String>> fileRecords(int file) {
+            List<Map.Entry<String, String>> records = new ArrayList<Map.Entry<String, String>>();
+            for (int i = 0; i < stripes; ++i) {
+                records.addAll(shards.get(stripeOf(file, i)).entrySet());
+            }
+            return records;
+        }
+
+        List<Map.Entry<String, String>> fileRecords(List<Map<String, String>> snapshot, int file) {
+            List<Map.Entry<String, String>> records = new ArrayList<Map.Entry<String, String>>();
+            for (int i = 0; i < stripes; ++i) {
+                records.addAll(snapshot.get(stripeOf(file, i)).entrySet());
+            }
+            return records;
+        }
+
+        boolean[] touchedFiles() {
+            boolean[] touched = new boolean[layout.getBuckets()];
+            for (int bucket = 0; bucket <= mask; ++bucket) {
+                touched[fileOf(bucket)] |= dirty[bucket];
+            }
+            return touched;
+        }
+
+        void lockAll() {
+            for (ReentrantLock lock : locks) {
+                lock.lock();
+            }
+        }
+
+        void unlockAll() {
+            for (int i = locks.length - 1; i >= 0; --i) {
+                if (locks[i].isHeldByCurrentThread()) {
+                    locks[i].unlock();
+                }
+            }
+        }
+    }
+
+    static void createCompressed(Path path) throws Exception {
+        Files.createFile(path.resolve(COMPRESSED));
+    }
+
+    private static synchronized ExecutorService getWriters() {
+        if (writers == null) {
+            int threads = Integer.parseInt(System.getProperty("fizteh.db.writers",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (threads < 1) {
+                throw new IllegalArgumentException("fizteh.db.writers must be positive");
+            }
+            writers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "shard-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return writers;
+    }
+
+    private static synchronized ForkJoinPool getReaders() {
+        if (readers == null) {
+            int threads = Integer.parseInt(System.getProperty("fizteh.db.readers",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (threads < 1) {
+                throw new IllegalArgumentException("fizteh.db.readers must be positive");
+            }
+            readers = new ForkJoinPool(threads);
+        }
+        return readers;
+    }
+
+    private Path importPath(int spill) {
+        return path.resolve(Integer.toString(spill) + IMPORT_SUFFIX);
+    }
+
+    private ShardWriter newShardWriter(Path shardFile, List<Map.Entry<String, String>> records) {
+        return newShardWriter(shardFile, records, null);
+    }
+
+    private ShardWriter newShardWriter(Path shardFile, List<Map.Entry<String, String>> records,
+            RateLimiter limiter) {
+        return new ShardWriter(shardFile, records, config.getDurability().isForced(), compressed,
+                config.getCompressionLevel(), limiter, hasPackedValues());
+    }
+
+    private Buckets lockAll() {
+        while (true) {
+            Buckets current = buckets;
+            current.lockAll();
+            if (current == buckets) {
+                return current;
+            }
+            current.unlockAll();
+        }
+    }
+
+    private void unlockAll() {
+        buckets.unlockAll();
+    }
+
+    private Buckets replace(Buckets fresh) {
+        fresh.lockAll();
+        Buckets old = buckets;
+        buckets = fresh;
+        old.unlockAll();
+        return fresh;
+    }
+
+    private Buckets lockKey(String key) {
+        while (true) {
+            Buckets current = buckets;
+            ReentrantLock lock = current.locks[current.bucketOf(key)];
+            lock.lock();
+            if (current == buckets) {
+                return current;
+            }
+            lock.unlock();
+        }
+    }
+
+    public ShardLayout getLayout() {
+        return buckets.layout;
+    }
+
+    @Override
+    public int size() {
+        return size.intValue();
+    }
+
+    @Override
+    public long getMemorySize() {
+        return memorySize.sum();
+    }
+
+    @Override
+    public boolean isDirty() {
+        return changed;
+    }
+
+    private static long estimateSize(Map<String, String> shard) {
+        long total = 0;
+        for (Map.Entry<String, String> record : shard.entrySet()) {
+            total += estimateSize(record.getKey(), record.getValue());
+        }
+        return total;
+    }
+
+    private static Exception loadFailure(String name, ExecutionException e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return new Exception("Can't load table " + name + ": " + cause.getMessage());
+    }
+
+    private List<Map<String, String>> readFile(Buckets current, int file) throws Exception {
+        Path shardFile = current.layout.shardPath(path, file);
+        if (Files.exists(shardFile)) {
+            return new ShardLoader(shardFile, current.layout, file, current.stripes, config.getEngine()).load();
+        }
+        List<Map<String, String>> shards = new ArrayList<Map<String, String>>(current.stripes);
+        for (int i = 0; i < current.stripes; ++i) {
+            shards.add(config.getEngine().newMap());
+        }
+        return shards;
+    }
+
+    private Map<String, String> loadShard(Buckets current, int bucket) throws Exception {
+        Map<String, String> shard = current.shards.get(bucket);
+        if (shard == null) {
+            int file = current.fileOf(bucket);
+            current.fileLocks[file].lock();
+            try {
+                loadFile(current, file);
+            } finally {
+                current.fileLocks[file].unlock();
+            }
+            shard = current.shards.get(bucket);
+        }
+        return shard;
+    }
+
+    private void loadFile(Buckets current, int file) throws Exception {
+        if (current.shards.get(current.stripeOf(file, 0)) != null) {
+            return;
+        }
+        List<Map<String, String>> shards = readFile(current, file);
+        for (int i = 0; i < current.stripes; ++i) {
+            current.shards.set(current.stripeOf(file, i), shards.get(i));
+            memorySize.add(estimateSize(shards.get(i)));
+            track(shards.get(i));
+        }
+        if (current.filters[file] != null) {
+            memorySize.add(-current.filters[file].getMemorySize());
+            current.filters[file] = null;
+        }
+    }
+
+    private Map<String, String> probe(Buckets current, int bucket, String key) throws Exception {
+        Map<String, String> shard = current.shards.get(bucket);
+        if (shard != null) {
+            return shard;
+        }
+        int file = current.fileOf(bucket);
+        BloomFilter filter;
+        current.fileLocks[file].lock();
+        try {
+            Path shardFile = current.layout.shardPath(path, file);
+            if (current.filters[file] == null && current.shards.get(bucket) == null && Files.exists(shardFile)) {
+                current.filters[file] = BloomFilter.read(shardFile);
+                if (current.filters[file] != null) {
+                    memorySize.add(current.filters[file].getMemorySize());
+                } else {
+                    current.unfiltered[file] = true;
+                }
+            }
+            filter = current.filters[file];
+            if (filter == null) {
+                loadFile(current, file);
+                return current.shards.get(bucket);
+            }
+        } finally {
+            current.fileLocks[file].unlock();
+        }
+        if (!filter.mightContain(key)) {
+            filterNegatives.increment();
+            return null;
+        }
+        shard = loadShard(current, bucket);
+        if (!shard.containsKey(key)) {
+            filterFalsePositives.increment();
+        }
+        return shard;
+    }
+
+    private Map<String, String> writable(Buckets current, int bucket) throws Exception {
+        Map<String, String> shard = loadShard(current, bucket);
+        if (current.frozen[bucket]) {
+            Map<String, String> copy = config.getEngine().newMap();
+            copy.putAll(shard);
+            current.shards.set(bucket, copy);
+            current.frozen[bucket] = false;
+            COPIES.increment();
+            shard = copy;
+        }
+        return shard;
+    }
+
+    private void reset(Buckets current) {
+        for (int i = 0; i <= current.mask; ++i) {
+            current.shards.set(i, null);
+            current.dirty[i] = false;
+            current.frozen[i] = false;
+        }
+        for (int i = 0; i < current.layout.getBuckets(); ++i) {
+            current.filters[i] = null;
+        }
+        changed = false;
+        size.reset();
+        memorySize.reset();
+    }
+
+    @Override
+    public void load() throws Exception {
+        saveLock.lock();
+        lockAll();
+        try {
+            loadLocked();
+        } finally {
+            unlockAll();
+            saveLock.unlock();
+        }
+    }
+
+    private void loadLocked() throws Exception {
+        finishReshard();
+        Buckets current = replace(new Buckets(ShardLayout.read(path)));
+        reset(current);
+        expirations.clear();
+        Manifest manifest = config.isLazy() ? Manifest.read(path) : null;
+        if (manifest != null && !manifest.isStale(path)) {
+            size.add(manifest.getRecordsCount());
+        } else {
+            loadAll(current);
+        }
+        Map<String, String> changes = new HashMap<String, String>();
+        replayJournals(path, changes);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String key = change.getKey();
+            Map<String, String> shard = loadShard(current, current.bucketOf(key));
+            String old = change.getValue() == null ? shard.remove(key) : shard.put(key, change.getValue());
+            applied(key, old, change.getValue());
+            track(key, change.getValue());
+        }
+    }
+
+    private void loadAll(Buckets current) throws Exception {
+        ShardLayout layout = current.layout;
+        List<ShardLoader> loaders = new ArrayList<ShardLoader>();
+        for (int i = 0; i < layout.getDirs(); ++i) {
+            if (Files.isDirectory(layout.dirPath(path, i))) {
+                for (int j = 0; j < layout.getFiles(); ++j) {
+                    int file = i * layout.getFiles() + j;
+                    Path tableFile = layout.shardPath(path, file);
+                    if (Files.exists(tableFile)) {
+                        ShardLoader loader = new ShardLoader(tableFile, layout, file, current.stripes,
+                                config.getEngine());
+                        getReaders().execute(loader);
+                        loaders.add(loader);
+                    }
+                }
+            }
+        }
+        try {
+            for (ShardLoader loader : loaders) {
+                List<Map<String, String>> shards = loader.get();
+                for (int i = 0; i < current.stripes; ++i) {
+                    current.shards.set(current.stripeOf(loader.getBucket(), i), shards.get(i));
+                    size.add(shards.get(i).size());
+                    memorySize.add(estimateSize(shards.get(i)));
+                    track(shards.get(i));
+                }
+            }
+        } catch (ExecutionException e) {
+            reset(current);
+            throw loadFailure(name, e);
+        }
+        for (int i = 0; i <= current.mask; ++i) {
+            if (current.shards.get(i) == null) {
+                current.shards.set(i, config.getEngine().newMap());
+            }
+        }
+    }
+
+    private void applied(String key, String old, String value) {
+        if (old == null && value == null) {
+            return;
+        }
+        if (old == null) {
+            size.increment();
+            memorySize.add(estimateSize(key, value));
+        } else if (value == null) {
+            size.decrement();
+            memorySize.add(-estimateSize(key, old));
+        } else {
+            memorySize.add(2L * (value.length() - old.length()));
+        }
+        Buckets current = buckets;
+        current.dirty[current.bucketOf(key)] = true;
+        changed = true;
+    }
+
+    @Override
+    public void save() throws Exception {
+        sweep();
+        saveLock.lock();
+        lockAll();
+        try {
+            checkOpen();
+            saveLocked();
+        } finally {
+            unlockAll();
+            saveLock.unlock();
+        }
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        sweep();
+        saveLock.lock();
+        try {
+            if (isClosed()) {
+                return;
+            }
+            if (!changed) {
+                writeFilters(buckets);
+                return;
+            }
+            long start = System.nanoTime();
+            Buckets current = lockAll();
+            List<Path> journals;
+            boolean[] touched;
+            List<Map<String, String>> snapshot;
+            int records;
+            try {
+                if (current.layout.resize(size(), config.getShardRecords()) != current.layout) {
+                    saveLocked();
+                    CHECKPOINT.record(System.nanoTime() - start);
+                    return;
+                }
+                journals = rotateJournal();
+                touched = current.touchedFiles();
+                snapshot = new ArrayList<Map<String, String>>(current.mask + 1);
+                for (int bucket = 0; bucket <= current.mask; ++bucket) {
+                    Map<String, String> shard = null;
+                    if (touched[current.fileOf(bucket)]) {
+                        shard = current.shards.get(bucket);
+                        current.frozen[bucket] = true;
+                        current.dirty[bucket] = false;
+                    }
+                    snapshot.add(shard);
+                }
+                changed = false;
+                records = size();
+            } finally {
+                unlockAll();
+            }
+            try {
+                writeFiles(current, touched, snapshot, config.getCheckpointLimiter(), "checkpoint");
+                Manifest.build(path, records).write(path, config.getDurability().isForced());
+                for (Path journal : journals) {
+                    Files.delete(journal);
+                }
+                writeFilters(current);
+            } catch (Exception e) {
+                lockAll();
+                try {
+                    for (int bucket = 0; bucket <= current.mask; ++bucket) {
+                        current.dirty[bucket] |= snapshot.get(bucket) != null;
+                    }
+                    changed = true;
+                } finally {
+                    unlockAll();
+                }
+                throw e;
+            } finally {
+                for (int bucket = 0; bucket <= current.mask; ++bucket) {
+                    if (snapshot.get(bucket) != null) {
+                        current.locks[bucket].lock();
+                        current.frozen[bucket] = false;
+                        current.locks[bucket].unlock();
+                    }
+                }
+            }
+            CHECKPOINT.record(System.nanoTime() - start);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    private void saveLocked() throws Exception {
+        if (!changed) {
+            writeFilters(buckets);
+            discardJournal();
+            return;
+        }
+        Buckets current = buckets;
+        ShardLayout layout = current.layout.resize(size(), config.getShardRecords());
+        if (layout != current.layout) {
+            reshard(current, layout);
+        } else {
+            saveDirty(current);
+        }
+        changed = false;
+        Manifest.build(path, size()).write(path, config.getDurability().isForced());
+        writeFilters(buckets);
+        discardJournal();
+    }
+
+    private void waitWrites(List<Future<Void>> writes, String action) throws Exception {
+        try {
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } catch (ExecutionException e) {
+            throw new Exception("Can't " + action + " table " + name + ": " + e.getCause().getMessage());
+        }
+    }
+
+    private void saveDirty(Buckets current) throws Exception {
+        List<Map<String, String>> shards = new ArrayList<Map<String, String>>(current.mask + 1);
+        for (int bucket = 0; bucket <= current.mask; ++bucket) {
+            shards.add(current.shards.get(bucket));
+        }
+        writeFiles(current, current.touchedFiles(), shards, null, "save");
+        for (int bucket = 0; bucket <= current.mask; ++bucket) {
+            current.dirty[bucket] = false;
+        }
+    }
+
+    private void writeFilters(Buckets current) throws Exception {
+        for (int file = 0; file < current.layout.getBuckets(); ++file) {
+            if (!current.unfiltered[file]) {
+                continue;
+            }
+            Path shardFile = current.layout.shardPath(path, file);
+            BloomFilter filter = cleanFilter(current, file);
+            if (filter == null) {
+                continue;
+            }
+            if (Files.exists(shardFile)) {
+                filter.write(shardFile);
+            }
+            current.unfiltered[file] = false;
+        }
+    }
+
+    private BloomFilter cleanFilter(Buckets current, int file) {
+        for (int i = 0; i < current.stripes; ++i) {
+            current.locks[current.stripeOf(file, i)].lock();
+        }
+        try {
+            for (int i = 0; i < current.stripes; ++i) {
+                int bucket = current.stripeOf(file, i);
+                if (current.dirty[bucket] || current.frozen[bucket] || current.shards.get(bucket) == null) {
+                    return null;
+                }
+            }
+            List<Map.Entry<String, String>> records = current.fileRecords(file);
+            BloomFilter filter = new BloomFilter(records.size());
+            for (Map.Entry<String, String> record : records) {
+                filter.add(record.getKey());
+            }
+            return filter;
+        } finally {
+            for (int i = current.stripes - 1; i >= 0; --i) {
+                current.locks[current.stripeOf(file, i)].unlock();
+            }
+        }
+    }
+
+    private void writeFiles(Buckets current, boolean[] touched, List<Map<String, String>> shards,
+            RateLimiter limiter, String action) throws Exception {
+        ShardLayout layout = current.layout;
+        List<Future<Void>> writes = new ArrayList<Future<Void>>();
+        for (int file = 0; file < layout.getBuckets(); ++file) {
+            if (!touched[file]) {
+                continue;
+            }
+            current.unfiltered[file] = false;
+            Path tableFile = layout.shardPath(path, file);
+            List<Map.Entry<String, String>> records = current.fileRecords(shards, file);
+            if (!records.isEmpty()) {
+                if (!Files.isDirectory(tableFile.getParent())) {
+                    Files.createDirectory(tableFile.getParent());
+                }
+                writes.add(getWriters().submit(newShardWriter(tableFile, records, limiter)));
+            } else {
+                Files.deleteIfExists(tableFile);
+                Files.deleteIfExists(BloomFilter.sidecar(tableFile));
+            }
+        }
+        waitWrites(writes, action);
+
+        int files = layout.getFiles();
+        for (int i = 0; i < layout.getDirs(); ++i) {
+            Path tableDir = layout.dirPath(path, i);
+            boolean removed = false;
+            for (int j = 0; j < files; ++j) {
+                removed |= touched[i * files + j];
+            }
+            if (removed && Files.isDirectory(tableDir) && tableDir.toFile().list().length == 0) {
+                Files.deleteIfExists(tableDir);
+            }
+        }
+    }
+
+    private void reshard(Buckets current, ShardLayout layout) throws Exception {
+        long start = System.nanoTime();
+        for (int file = 0; file < current.layout.getBuckets(); ++file) {
+            loadShard(current, current.stripeOf(file, 0));
+        }
+        Buckets fresh = new Buckets(layout);
+        for (int bucket = 0; bucket <= fresh.mask; ++bucket) {
+            fresh.shards.set(bucket, config.getEngine().newMap());
+        }
+        for (int bucket = 0; bucket <= current.mask; ++bucket) {
+            for (Map.Entry<String, String> record : current.shards.get(bucket).entrySet()) {
+                fresh.shards.get(fresh.bucketOf(record.getKey())).put(record.getKey(), record.getValue());
+            }
+        }
+
+        Path temp = path.resolve(RESHARD_TEMP);
+        if (Files.exists(temp)) {
+            Utils.remove(temp);
+        }
+        Files.createDirectory(temp);
+        List<Future<Void>> writes = new ArrayList<Future<Void>>();
+        for (int file = 0; file < layout.getBuckets(); ++file) {
+            List<Map.Entry<String, String>> records = fresh.fileRecords(file);
+            if (!records.isEmpty()) {
+                Path tableFile = layout.shardPath(temp, file);
+                Files.createDirectories(tableFile.getParent());
+                writes.add(getWriters().submit(newShardWriter(tableFile, records)));
+            }
+        }
+        try {
+            waitWrites(writes, "reshard");
+            layout.write(temp, config.getDurability().isForced());
+        } catch (Exception e) {
+            Utils.remove(temp);
+            throw e;
+        }
+        Files.move(temp, path.resolve(RESHARD), StandardCopyOption.ATOMIC_MOVE);
+        finishReshard();
+        replace(fresh);
+        RESHARD_TIME.record(System.nanoTime() - start);
+    }
+
+    private void finishReshard() throws Exception {
+        Path temp = path.resolve(RESHARD_TEMP);
+        if (Files.exists(temp)) {
+            Utils.remove(temp);
+        }
+        Path ready = path.resolve(RESHARD);
+        if (!Files.isDirectory(ready)) {
+            return;
+        }
+        Path old = path.resolve(RESHARD_OLD);
+        if (Files.exists(ready.resolve(ShardLayout.FILENAME))) {
+            Files.createDirectories(old);
+            for (Path dir : ShardLayout.listDirs(path)) {
+                Files.move(dir, old.resolve(dir.getFileName()));
+            }
+            Files.move(ready.resolve(ShardLayout.FILENAME), path.resolve(ShardLayout.FILENAME),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        for (Path dir : ShardLayout.listDirs(ready)) {
+            Files.move(dir, path.resolve(dir.getFileName()));
+        }
+        if (Files.exists(old)) {
+            Utils.remove(old);
+        }
+        Utils.remove(ready);
+    }
+
+    @Override
+    public void close() throws Exception {
+        saveLock.lock();
+        lockAll();
+        try {
+            super.close();
+        } finally {
+            unlockAll();
+            saveLock.unlock();
+        }
+    }
+
+    @Override
+    protected String read(String key) throws Exception {
+        checkOpen();
+        Buckets current = buckets;
+        Map<String, String> shard = current.shards.get(current.bucketOf(key));
+        if (shard != null && config.getEngine().isConcurrent()) {
+            return shard.get(key);
+        }
+        current = lockKey(key);
+        int bucket = current.bucketOf(key);
+        try {
+            shard = probe(current, bucket, key);
+            return shard == null ? null : shard.get(key);
+        } finally {
+            current.locks[bucket].unlock();
+        }
+    }
+
+    private static int[] bucketsOf(Buckets current, Collection<String> keys) {
+        if (keys.size() == 1) {
+            return new int[] {current.bucketOf(keys.iterator().next())};
+        }
+        TreeSet<Integer> buckets = new TreeSet<Integer>();
+        for (String key : keys) {
+            buckets.add(current.bucketOf(key));
+        }
+        int[] sorted = new int[buckets.size()];
+        int i = 0;
+        for (int bucket : buckets) {
+            sorted[i++] = bucket;
+        }
+        return sorted;
+    }
+
+    @Override
+    protected void lockKeys(Collection<String> keys) {
+        while (true) {
+            Buckets current = buckets;
+            int[] locked = bucketsOf(current, keys);
+            for (int bucket : locked) {
+                current.locks[bucket].lock();
+            }
+            if (current == buckets) {
+                return;
+            }
+            for (int i = locked.length - 1; i >= 0; --i) {
+                current.locks[locked[i]].unlock();
+            }
+        }
+    }
+
+    @Override
+    protected void unlockKeys(Collection<String> keys) {
+        Buckets current = buckets;
+        int[] locked = bucketsOf(current, keys);
+        for (int i = locked.length - 1; i >= 0; --i) {
+            current.locks[locked[i]].unlock();
+        }
+    }
+
+    @Override
+    protected String readLocked(String key) throws Exception {
+        Buckets current = buckets;
+        Map<String, String> shard = probe(current, current.bucketOf(key), key);
+        return shard == null ? null : shard.get(key);
+    }
+
+    @Override
+    protected void applyLocked(String key, String old, String value) throws Exception {
+        Buckets current = buckets;
+        Map<String, String> shard = writable(current, current.bucketOf(key));
+        if (value == null) {
+            shard.remove(key);
+        } else {
+            shard.put(key, value);
+        }
+        applied(key, old, value);
+    }
+
+    private boolean isEmptyOnDisk() throws Exception {
+        return size() == 0 && !changed && !isInUse() && ShardLayout.listDirs(path).isEmpty();
+    }
+
+    @Override
+    protected long importStored(RecordSource source) throws Exception {
+        checkOpen();
+        saveLock.lock();
+        lockAll();
+        try {
+            if (isEmptyOnDisk()) {
+                return writeShards(source);
+            }
+        } finally {
+            unlockAll();
+            saveLock.unlock();
+        }
+        return super.importStored(source);
+    }
+
+    private long writeShards(RecordSource source) throws Exception {
+        DataOutputStream[] outputs = new DataOutputStream[1 << IMPORT_SPILL_BITS];
+        long count = 0;
+        try {
+            try {
+                while (source.next()) {
+                    String key = source.getKey();
+                    int spill = ShardLayout.mixedHash(key) & (outputs.length - 1);
+                    if (outputs[spill] == null) {
+                        outputs[spill] = new DataOutputStream(new BufferedOutputStream(
+                                Files.newOutputStream(importPath(spill)), IMPORT_BUFFER));
+                    }
+                    RecordWriter.writeString(outputs[spill], key);
+                    if (source.getValue() == null) {
+                        RecordWriter.writeTombstone(outputs[spill]);
+                    } else {
+                        RecordWriter.writeString(outputs[spill], source.getValue());
+                    }
+                    ++count;
+                }
+            } finally {
+                for (DataOutputStream output : outputs) {
+                    if (output != null) {
+                        output.close();
+                        BYTES_WRITTEN.add(output.size());
+                    }
+                }
+            }
+            ShardLayout layout = ShardLayout.forSize(count, config.getShardRecords());
+            layout.write(path, config.getDurability().isForced());
+            Map<Integer, List<Integer>> groups = new TreeMap<Integer, List<Integer>>();
+            for (int spill = 0; spill < outputs.length; ++spill) {
+                if (outputs[spill] != null) {
+                    int group = layout.getBits() <= IMPORT_SPILL_BITS ? layout.bucketOfHash(spill) : spill;
+                    if (!groups.containsKey(group)) {
+                        groups.put(group, new ArrayList<Integer>());
+                    }
+                    groups.get(group).add(spill);
+                }
+            }
+            List<Future<Integer>> merges = new ArrayList<Future<Integer>>();
+            for (List<Integer> spills : groups.values()) {
+                merges.add(getWriters().submit(mergeImport(layout, spills)));
+            }
+            int total = 0;
+            try {
+                for (Future<Integer> merge : merges) {
+                    total += merge.get();
+                }
+            } catch (ExecutionException e) {
+                throw new Exception("Can't import into table " + name + ": " + e.getCause().getMessage());
+            }
+            Manifest.build(path, total).write(path, config.getDurability().isForced());
+        } catch (Exception e) {
+            for (int spill = 0; spill < outputs.length; ++spill) {
+                if (outputs[spill] != null) {
+                    Files.deleteIfExists(importPath(spill));
+                }
+            }
+            for (Path dir : ShardLayout.listDirs(path)) {
+                Utils.remove(dir);
+            }
+            throw e;
+        }
+        loadLocked();
+        return count;
+    }
+
+    private Callable<Integer> mergeImport(final ShardLayout layout, final List<Integer> spills) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Map<String, String> records = new HashMap<String, String>();
+                for (int spill : spills) {
+                    AppendLog.replay(importPath(spill), records);
+                }
+                Map<Integer, List<Map.Entry<String, String>>> shards =
+                        new TreeMap<Integer, List<Map.Entry<String, String>>>();
+                for (Map.Entry<String, String> record : records.entrySet()) {
+                    int bucket = layout.bucketOf(record.getKey());
+                    if (!shards.containsKey(bucket)) {
+                        shards.put(bucket, new ArrayList<Map.Entry<String, String>>());
+                    }
+                    shards.get(bucket).add(record);
+                }
+                for (Map.Entry<Integer, List<Map.Entry<String, String>>> shard : shards.entrySet()) {
+                    Path tableFile = layout.shardPath(path, shard.getKey());
+                    Files.createDirectories(tableFile.getParent());
+                    newShardWriter(tableFile, shard.getValue()).call();
+                }
+                for (int spill : spills) {
+                    Files.delete(importPath(spill));
+                }
+                return records.size();
+            }
+        };
+    }
+
+    @Override
+    protected long exportStored(RecordSink sink) throws Exception {
+        checkOpen();
+        long count = 0;
+        Buckets current = buckets;
+        for (int file = 0; file < current.layout.getBuckets(); ++file) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, String> record : copyFile(current, file)) {
+                if (!Expiry.isExpired(record.getValue(), now)) {
+                    sink.write(record.getKey(), record.getValue());
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<Map.Entry<String, String>> copyFile(Buckets current, int file) throws Exception {
+        for (int i = 0; i < current.stripes; ++i) {
+            current.locks[current.stripeOf(file, i)].lock();
+        }
+        try {
+            if (current.shards.get(current.stripeOf(file, 0)) != null) {
+                return current.fileRecords(file);
+            }
+            List<Map.Entry<String, String>> records = new ArrayList<Map.Entry<String, String>>();
+            for (Map<String, String> shard : readFile(current, file)) {
+                records.addAll(shard.entrySet());
+            }
+            return records;
+        } finally {
+            for (int i = current.stripes - 1; i >= 0; --i) {
+                current.locks[current.stripeOf(file, i)].unlock();
+            }
+        }
+    }
+
+    @Override
+    public Iterable<String> list() {
+        checkOpen();
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private Buckets current = buckets;
+                    private int file;
+                    private Iterator<Map.Entry<String, String>> records =
+                            Collections.<Map.Entry<String, String>>emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!records.hasNext() && file < current.layout.getBuckets()) {
+                            try {
+                                records = Expiry.live(copyFile(current, file++).iterator(),
+                                        System.currentTimeMillis(), false);
+                            } catch (RuntimeException e) {
+                                throw e;
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e.getMessage(), e);
+                            }
+                        }
+                        return records.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return records.next().getKey();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    protected Iterator<Map.Entry<String, String>> scanStored(String from, String to) throws Exception {
+        checkOpen();
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        Buckets current = buckets;
+        for (int file = 0; file < current.layout.getBuckets(); ++file) {
+            for (Map.Entry<String, String> record : copyFile(current, file)) {
+                String key = record.getKey();
+                if ((from == null || key.compareTo(from) >= 0) && (to == null || key.compareTo(to) < 0)) {
+                    sorted.put(key, record.getValue());
+                }
+            }
+        }
+        return sorted.entrySet().iterator();
+    }
+}
@@ -0,0 +1,397 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.storage.BloomFilter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.SegmentReader;
+import ru.fizteh.fivt.students.andrewzhernov.storage.SegmentWriter;
+
+public class SortedTable extends Table {
+    static final String SEGMENT = "data.seg";
+    private static final Histogram LOAD = Metrics.histogram("segment.load");
+    private static final Histogram SAVE = Metrics.histogram("segment.save");
+    private static final Histogram CHECKPOINT = Metrics.histogram("checkpoint");
+
+    private SegmentReader segment;
+    private BloomFilter filter;
+    private TreeMap<String, String> overlay;
+    private TreeMap<String, String> frozen;
+    private int size;
+    private long overlaySize;
+    private long frozenSize;
+    private ReentrantLock lock;
+    private ReentrantLock saveLock;
+
+    public SortedTable(String name, Path path, TableConfig config) {
+        super(name, path, config);
+        overlay = new TreeMap<String, String>();
+        lock = new ReentrantLock();
+        saveLock = new ReentrantLock();
+    }
+
+    static boolean isSorted(Path path) {
+        return Files.exists(path.resolve(SEGMENT));
+    }
+
+    static void create(Path path, boolean force) throws Exception {
+        try (SegmentWriter writer = new SegmentWriter(path.resolve(SEGMENT), force, 0)) {
+            writer.finish();
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long getMemorySize() {
+        if (segment == null) {
+            return overlaySize;
+        }
+        return segment.getIndexSize() + filter.getMemorySize() + overlaySize;
+    }
+
+    @Override
+    public synchronized boolean isDirty() {
+        return !overlay.isEmpty() || frozen != null;
+    }
+
+    @Override
+    public void load() throws Exception {
+        saveLock.lock();
+        try {
+            loadLocked();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    private synchronized void loadLocked() throws Exception {
+        long start = System.nanoTime();
+        if (segment != null) {
+            segment.close();
+        }
+        overlay.clear();
+        overlaySize = 0;
+        expirations.clear();
+        segment = new SegmentReader(path.resolve(SEGMENT));
+        size = (int) segment.getRecordCount();
+        loadFilter();
+        replayJournals(path, overlay);
+        for (Map.Entry<String, String> change : overlay.entrySet()) {
+            boolean stored = getStored(change.getKey()) != null;
+            if (change.getValue() != null && !stored) {
+                ++size;
+            } else if (change.getValue() == null && stored) {
+                --size;
+            }
+            overlaySize += estimateSize(change.getKey(), change.getValue() == null ? "" : change.getValue());
+            track(change.getKey(), change.getValue());
+        }
+        LOAD.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void save() throws Exception {
+        sweep();
+        saveLock.lock();
+        try {
+            saveLocked();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    private synchronized void saveLocked() throws Exception {
+        if (overlay.isEmpty()) {
+            discardJournal();
+            return;
+        }
+        long start = System.nanoTime();
+        try (SegmentWriter writer = new SegmentWriter(path.resolve(SEGMENT), config.getDurability().isForced(), size,
+                null, hasPackedValues())) {
+            Iterator<Map.Entry<String, String>> records = Expiry.live(scanStored(null, null),
+                    System.currentTimeMillis(), false);
+            int written = 0;
+            while (records.hasNext()) {
+                Map.Entry<String, String> record = records.next();
+                writer.append(record.getKey(), record.getValue());
+                ++written;
+            }
+            writer.finish();
+            size = written;
+        }
+        segment.close();
+        segment = new SegmentReader(path.resolve(SEGMENT));
+        loadFilter();
+        overlay.clear();
+        overlaySize = 0;
+        Manifest.build(path, size).write(path, config.getDurability().isForced());
+        discardJournal();
+        SAVE.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void checkpoint() throws Exception {
+        sweep();
+        saveLock.lock();
+        try {
+            long start = System.nanoTime();
+            List<Path> journals;
+            int records;
+            lock.lock();
+            try {
+                synchronized (this) {
+                    if (isClosed() || overlay.isEmpty()) {
+                        return;
+                    }
+                    journals = rotateJournal();
+                    frozen = overlay;
+                    frozenSize = overlaySize;
+                    overlay = new TreeMap<String, String>();
+                    records = size;
+                }
+            } finally {
+                lock.unlock();
+            }
+            boolean written = false;
+            try {
+                Path segmentPath = path.resolve(SEGMENT);
+                try (SegmentReader stored = new SegmentReader(segmentPath);
+                        SegmentWriter writer = new SegmentWriter(segmentPath, config.getDurability().isForced(),
+                                records, config.getCheckpointLimiter(), hasPackedValues())) {
+                    Iterator<Map.Entry<String, String>> merged =
+                            new MergeIterator(stored.scan(null, null), frozen.entrySet().iterator());
+                    while (merged.hasNext()) {
+                        Map.Entry<String, String> record = merged.next();
+                        writer.append(record.getKey(), record.getValue());
+                    }
+                    writer.finish();
+                }
+                written = true;
+            } finally {
+                synchronized (this) {
+                    if (written) {
+                        segment.close();
+                        segment = new SegmentReader(path.resolve(SEGMENT));
+                        loadFilter();
+                        overlaySize -= frozenSize;
+                    } else {
+                        frozen.putAll(overlay);
+                        overlay = frozen;
+                    }
+                    frozen = null;
+                }
+            }
+            Manifest.build(path, records).write(path, config.getDurability().isForced());
+            for (Path journal : journals) {
+                Files.delete(journal);
+            }
+            CHECKPOINT.record(System.nanoTime() - start);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        saveLock.lock();
+        try {
+            synchronized (this) {
+                super.close();
+                if (segment != null) {
+                    segment.close();
+                    segment = null;
+                }
+            }
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    private void loadFilter() throws Exception {
+        Path segmentPath = path.resolve(SEGMENT);
+        filter = BloomFilter.read(segmentPath);
+        if (filter == null) {
+            filter = new BloomFilter(segment.getRecordCount());
+            Iterator<Map.Entry<String, String>> records = segment.scan(null, null);
+            while (records.hasNext()) {
+                filter.add(records.next().getKey());
+            }
+        }
+    }
+
+    private String getStored(String key) throws Exception {
+        if (!filter.mightContain(key)) {
+            filterNegatives.increment();
+            return null;
+        }
+        String value = segment.get(key);
+        if (value == null) {
+            filterFalsePositives.increment();
+        }
+        return value;
+    }
+
+    @Override
+    protected synchronized String read(String key) throws Exception {
+        checkOpen();
+        if (overlay.containsKey(key)) {
+            return overlay.get(key);
+        }
+        if (frozen != null && frozen.containsKey(key)) {
+            return frozen.get(key);
+        }
+        return getStored(key);
+    }
+
+    @Override
+    protected void lockKeys(Collection<String> keys) {
+        lock.lock();
+    }
+
+    @Override
+    protected void unlockKeys(Collection<String> keys) {
+        lock.unlock();
+    }
+
+    @Override
+    protected String readLocked(String key) throws Exception {
+        return read(key);
+    }
+
+    @Override
+    protected synchronized void applyLocked(String key, String old, String value) throws Exception {
+        overlay.put(key, value);
+        overlaySize += estimateSize(key, value == null ? "" : value);
+        if (old == null) {
+            ++size;
+        } else if (value == null) {
+            --size;
+        }
+    }
+
+    @Override
+    public Iterable<String> list() {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Map.Entry<String, String>> records = Expiry.live(scanStored(null, null),
+                        System.currentTimeMillis(), false);
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return records.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return records.next().getKey();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    protected synchronized Iterator<Map.Entry<String, String>> scanStored(String from, String to) {
+        checkOpen();
+        TreeMap<String, String> changes = new TreeMap<String, String>();
+        if (frozen != null) {
+            changes.putAll(range(frozen, from, to));
+        }
+        changes.putAll(range(overlay, from, to));
+        return new MergeIterator(segment.scan(from, to), changes.entrySet().iterator());
+    }
+
+    private static NavigableMap<String, String> range(NavigableMap<String, String> changes, String from, String to) {
+        if (from != null) {
+            changes = changes.tailMap(from, true);
+        }
+        if (to != null) {
+            changes = changes.headMap(to, false);
+        }
+        return changes;
+    }
+
+    private static class MergeIterator implements Iterator<Map.Entry<String, String>> {
+        private Iterator<Map.Entry<String, String>> stored;
+        private Iterator<Map.Entry<String, String>> changes;
+        private Map.Entry<String, String> nextStored;
+        private Map.Entry<String, String> nextChange;
+        private Map.Entry<String, String> next;
+
+        MergeIterator(Iterator<Map.Entry<String, String>> stored, Iterator<Map.Entry<String, String>> changes) {
+            this.stored = stored;
+            this.changes = changes;
+            nextStored = stored.hasNext() ? stored.next() : null;
+            nextChange = changes.hasNext() ? changes.next() : null;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && (nextStored != null || nextChange != null)) {
+                Map.Entry<String, String> candidate;
+                int compare;
+                if (nextStored == null) {
+                    compare = 1;
+                } else if (nextChange == null) {
+                    compare = -1;
+                } else {
+                    compare = nextStored.getKey().compareTo(nextChange.getKey());
+                }
+                if (compare < 0) {
+                    candidate = nextStored;
+                    nextStored = stored.hasNext() ? stored.next() : null;
+                } else {
+                    if (compare == 0) {
+                        nextStored = stored.hasNext() ? stored.next() : null;
+                    }
+                    candidate = nextChange;
+                    nextChange = changes.hasNext() ? changes.next() : null;
+                }
+                if (candidate.getValue() != null) {
+                    next = candidate;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
+import ru.fizteh.fivt.students.andrewzhernov.storage.Durability;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
+import ru.fizteh.fivt.students.andrewzhernov.storage.TimingWheel;
+
+public abstract class Table {
+    static final String JOURNAL = "journal";
+    static final String PACKED = "packed";
+    static final int ENTRY_OVERHEAD = 96;
+    static final int IMPORT_BATCH = 4096;
+    static final long EXPIRY_TICK = 10;
+    private static final LongAdder EXPIRED = Metrics.counter("ttl.expired");
+
+    protected String name;
+    protected Path path;
+    protected TableConfig config;
+    private Schema schema;
+    private boolean packedValues;
+    private volatile AppendLog journal;
+    private volatile boolean closed;
+    protected LongAdder filterNegatives = new LongAdder();
+    protected LongAdder filterFalsePositives = new LongAdder();
+    protected Versions versions = new Versions();
+    protected TimingWheel expirations = new TimingWheel(EXPIRY_TICK, System.currentTimeMillis());
+
+    protected Table(String name, Path path, TableConfig config) {
+        this.name = name;
+        this.path = path;
+        this.config = config;
+    }
+
+    public static Table open(String name, Path path, TableConfig config) throws Exception {
+        Table table = SortedTable.isSorted(path) ? new SortedTable(name, path, config)
+                : new ShardedTable(name, path, config);
+        table.schema = Schema.read(path);
+        table.packedValues = table.schema != null && Files.exists(path.resolve(PACKED));
+        return table;
+    }
+
+    static boolean hasJournal(Path path) throws Exception {
+        return !journalFiles(path).isEmpty();
+    }
+
+    private static TreeMap<Long, Path> rotatedJournals(Path path) throws Exception {
+        TreeMap<Long, Path> rotated = new TreeMap<Long, Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, JOURNAL + ".*")) {
+            for (Path entry : stream) {
+                String suffix = entry.getFileName().toString().substring(JOURNAL.length() + 1);
+                if (suffix.matches("[0-9]+")) {
+                    rotated.put(Long.parseLong(suffix), entry);
+                }
+            }
+        }
+        return rotated;
+    }
+
+    static List<Path> journalFiles(Path path) throws Exception {
+        List<Path> files = new ArrayList<Path>(rotatedJournals(path).values());
+        if (Files.exists(path.resolve(JOURNAL))) {
+            files.add(path.resolve(JOURNAL));
+        }
+        return files;
+    }
+
+    static void replayJournals(Path path, Map<String, String> changes) throws Exception {
+        for (Path journal : journalFiles(path)) {
+            AppendLog.replay(journal, changes, true);
+        }
+    }
+
+    static long estimateSize(String key, String value) {
+        return ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    static void createPacked(Path path) throws Exception {
+        Files.createFile(path.resolve(PACKED));
+    }
+
+    protected boolean hasPackedValues() {
+        return packedValues;
+    }
+
+    Schema checkSchema(Tuple tuple) {
+        if (schema == null) {
+            throw new IllegalStateException("Table " + name + " has no schema");
+        }
+        if (tuple != null && !schema.equals(tuple.getSchema())) {
+            throw new IllegalArgumentException("Tuple " + tuple.getSchema() + " does not match table " + name
+                    + " schema " + schema);
+        }
+        return schema;
+    }
+
+    String checkPacked(String value) throws Exception {
+        if (schema != null && value != null) {
+            Tuple.wrap(schema, value);
+        }
+        return value;
+    }
+
+    Tuple toTuple(String packed) {
+        return packed == null ? null : new Tuple(checkSchema(null), packed);
+    }
+
+    public long getFilterNegatives() {
+        return filterNegatives.sum();
+    }
+
+    public long getFilterFalsePositives() {
+        return filterFalsePositives.sum();
+    }
+
+    public abstract int size();
+
+    public abstract long getMemorySize();
+
+    public abstract boolean isDirty();
+
+    public abstract void load() throws Exception;
+
+    public abstract void save() throws Exception;
+
+    public void checkpoint() throws Exception {
+        save();
+    }
+
+    protected abstract String read(String key) throws Exception;
+
+    public String get(String key) throws Exception {
+        String stored = read(key);
+        if (stored != null && Expiry.isExpired(stored, System.currentTimeMillis())) {
+            expire(key);
+            return null;
+        }
+        return stored == null ? null : Expiry.valueOf(stored);
+    }
+
+    static long deadline(long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("TTL must not be negative");
+        }
+        return ttlMillis == 0 ? 0 : System.currentTimeMillis() + ttlMillis;
+    }
+
+    protected void track(String key, String stored) {
+        long deadline = stored == null ? 0 : Expiry.deadlineOf(stored);
+        if (deadline > 0) {
+            expirations.add(key, deadline);
+        } else {
+            expirations.remove(key);
+        }
+    }
+
+    protected void track(Map<String, String> records) {
+        for (Map.Entry<String, String> record : records.entrySet()) {
+            long deadline = Expiry.deadlineOf(record.getValue());
+            if (deadline > 0) {
+                expirations.add(record.getKey(), deadline);
+            }
+        }
+    }
+
+    boolean expire(String key) throws Exception {
+        List<String> keys = Collections.singletonList(key);
+        lockKeys(keys);
+        try {
+            String old = readLocked(key);
+            if (old == null || !Expiry.isExpired(old, System.currentTimeMillis())) {
+                return false;
+            }
+            long version = versions.allocate();
+            try {
+                versions.record(key, old, version);
+                applyLocked(key, old, null);
+                track(key, null);
+                writeJournal(key, null);
+            } finally {
+                versions.publish(version);
+            }
+            EXPIRED.increment();
+            return true;
+        } finally {
+            unlockKeys(keys);
+        }
+    }
+
+    public int sweep() throws Exception {
+        if (isClosed()) {
+            return 0;
+        }
+        int count = 0;
+        for (String key : expirations.advance(System.currentTimeMillis())) {
+            if (expire(key)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    protected abstract void lockKeys(Collection<String> keys);
+
+    protected abstract void unlockKeys(Collection<String> keys);
+
+    protected abstract String readLocked(String key) throws Exception;
+
+    protected abstract void applyLocked(String key, String old, String value) throws Exception;
+
+    public String put(String key, String value) throws Exception {
+        return put(key, value, 0);
+    }
+
+    public String put(String key, String value, long ttlMillis) throws Exception {
+        return store(key, checkPacked(value), ttlMillis);
+    }
+
+    private String store(String key, String value, long ttlMillis) throws Exception {
+        checkOpen();
+        return Expiry.live(write(key, Expiry.encode(value, deadline(ttlMillis))), System.currentTimeMillis());
+    }
+
+    public String remove(String key) throws Exception {
+        checkOpen();
+        return Expiry.live(write(key, null), System.currentTimeMillis());
+    }
+
+    public Tuple getTuple(String key) throws Exception {
+        return toTuple(get(key));
+    }
+
+    public Tuple putTuple(String key, Tuple value) throws Exception {
+        checkSchema(value);
+        return toTuple(store(key, value.getPacked(), 0));
+    }
+
+    private String write(String key, String value) throws Exception {
+        List<String> keys = Collections.singletonList(key);
+        lockKeys(keys);
+        try {
+            String old = readLocked(key);
+            if (old == null && value == null) {
+                return null;
+            }
+            long version = versions.allocate();
+            try {
+                versions.record(key, old, version);
+                applyLocked(key, old, value);
+                track(key, value);
+                writeJournal(key, value);
+            } finally {
+                versions.publish(version);
+            }
+            return old;
+        } finally {
+            unlockKeys(keys);
+        }
+    }
+
+    public Transaction begin() {
+        checkOpen();
+        return new Transaction(this, snapshot());
+    }
+
+    long snapshot() {
+        return versions.begin();
+    }
+
+    public boolean isInUse() {
+        return versions.isInUse();
+    }
+
+    void end(long snapshot) {
+        versions.end(snapshot);
+    }
+
+    String getSnapshot(String key, long snapshot) throws Exception {
+        while (true) {
+            Versions.Version head = versions.head(key);
+            String current = read(key);
+            if (versions.head(key) == head) {
+                return Versions.undo(head, current, snapshot);
+            }
+        }
+    }
+
+    List<String> changedSince(long snapshot) {
+        return versions.changedSince(snapshot);
+    }
+
+    void commit(Map<String, String> changes, long snapshot) throws Exception {
+        checkOpen();
+        List<String> keys = new ArrayList<String>(changes.keySet());
+        lockKeys(keys);
+        try {
+            for (String key : keys) {
+                if (versions.conflicts(key, snapshot)) {
+                    throw new Exception("Conflict on key " + key + ": it was changed by another transaction");
+                }
+            }
+            long version = versions.allocate();
+            try {
+                Map<String, String> applied = new LinkedHashMap<String, String>();
+                for (String key : keys) {
+                    String old = readLocked(key);
+                    String value = changes.get(key);
+                    if (old != null || value != null) {
+                        versions.record(key, old, version);
+                        applyLocked(key, old, value);
+                        track(key, value);
+                        applied.put(key, value);
+                    }
+                }
+                writeJournal(applied);
+            } finally {
+                versions.publish(version);
+            }
+        } finally {
+            unlockKeys(keys);
+        }
+    }
+
+    public abstract Iterable<String> list() throws Exception;
+
+    protected abstract Iterator<Map.Entry<String, String>> scanStored(String from, String to) throws Exception;
+
+    public Iterator<Map.Entry<String, String>> scan(String from, String to) throws Exception {
+        return Expiry.live(scanStored(from, to), System.currentTimeMillis(), true);
+    }
+
+    public long importRecords(RecordSource source, RecordFormat format) throws Exception {
+        return importStored(storedSource(source, format));
+    }
+
+    private RecordSource storedSource(final RecordSource source, final RecordFormat format) {
+        return new RecordSource() {
+            private String value;
+
+            @Override
+            public boolean next() throws Exception {
+                if (!source.next()) {
+                    return false;
+                }
+                value = source.getValue();
+                if (value != null) {
+                    try {
+                        value = toStored(value, format);
+                    } catch (Exception e) {
+                        throw new Exception("Can't import key " + source.getKey() + " into table " + name + ": "
+                                + e.getMessage());
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public String getKey() {
+                return source.getKey();
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+        };
+    }
+
+    private String toStored(String value, RecordFormat format) throws Exception {
+        if (format == RecordFormat.TSV) {
+            return Expiry.encode(schema == null ? value : schema.parseTuple(value).getPacked(), 0);
+        }
+        if (!Expiry.isWellFormed(value)) {
+            throw new Exception("malformed TTL prefix");
+        }
+        checkPacked(Expiry.valueOf(value));
+        return value;
+    }
+
+    private String toDisplay(String stored, RecordFormat format) {
+        if (format != RecordFormat.TSV) {
+            return stored;
+        }
+        String value = Expiry.valueOf(stored);
+        return schema == null ? value : new Tuple(schema, value).toString();
+    }
+
+    protected long importStored(RecordSource source) throws Exception {
+        checkOpen();
+        long count = 0;
+        Map<String, String> batch = new HashMap<String, String>();
+        while (source.next()) {
+            batch.put(source.getKey(), source.getValue());
+            ++count;
+            if (batch.size() >= IMPORT_BATCH) {
+                commit(batch, Long.MAX_VALUE);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            commit(batch, Long.MAX_VALUE);
+        }
+        return count;
+    }
+
+    public long exportRecords(final RecordSink sink, final RecordFormat format) throws Exception {
+        return exportStored(new RecordSink() {
+            @Override
+            public void write(String key, String value) throws Exception {
+                sink.write(key, toDisplay(value, format));
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        });
+    }
+
+    protected long exportStored(RecordSink sink) throws Exception {
+        long count = 0;
+        Iterator<Map.Entry<String, String>> records = Expiry.live(scanStored(null, null),
+                System.currentTimeMillis(), false);
+        while (records.hasNext()) {
+            Map.Entry<String, String> record = records.next();
+            sink.write(record.getKey(), record.getValue());
+            ++count;
+        }
+        return count;
+    }
+
+    public void close() throws Exception {
+        closed = true;
+        closeJournal();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    protected void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Table " + name + " is closed");
+        }
+    }
+
+    protected synchronized void closeJournal() throws Exception {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    protected void discardJournal() throws Exception {
+        closeJournal();
+        for (Path journal : journalFiles(path)) {
+            Files.delete(journal);
+        }
+    }
+
+    protected synchronized List<Path> rotateJournal() throws Exception {
+        closeJournal();
+        TreeMap<Long, Path> rotated = rotatedJournals(path);
+        Path current = path.resolve(JOURNAL);
+        if (Files.exists(current)) {
+            long next = rotated.isEmpty() ? 1 : rotated.lastKey() + 1;
+            Path target = path.resolve(JOURNAL + "." + next);
+            Files.move(current, target, StandardCopyOption.ATOMIC_MOVE);
+            if (config.getDurability().isForced()) {
+                AppendLog.syncDirectory(path);
+            }
+            rotated.put(next, target);
+        }
+        return new ArrayList<Path>(rotated.values());
+    }
+
+    protected void writeJournal(String key, String value) throws Exception {
+        writeJournal(Collections.singletonMap(key, value));
+    }
+
+    protected void writeJournal(Map<String, String> records) throws Exception {
+        if (config.getDurability() == Durability.NONE) {
+            return;
+        }
+        AppendLog log = journal;
+        if (log == null) {
+            synchronized (this) {
+                if (journal == null) {
+                    journal = new AppendLog(path.resolve(JOURNAL), config.getDurability(), config.getSyncOps(),
+                            config.getSyncMillis(), packedValues);
+                }
+                log = journal;
+            }
+        }
+        log.append(records);
+    }
+}
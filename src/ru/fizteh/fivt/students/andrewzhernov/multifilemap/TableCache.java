@@ -0,0 +1,67 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TableCache {
+    private Map<String, Table> tables;
+    private long budget;
+
+    public TableCache(long budget) {
+        this.budget = budget;
+        tables = new LinkedHashMap<String, Table>(16, 0.75f, true);
+    }
+
+    public Table get(String tablename) {
+        return tables.get(tablename);
+    }
+
+    public void put(Table table) {
+        tables.put(table.getName(), table);
+    }
+
+    public Table remove(String tablename) throws Exception {
+        Table table = tables.remove(tablename);
+        if (table != null) {
+            table.close();
+        }
+        return table;
+    }
+
+    public List<Table> evict(Table pinned) throws Exception {
+        List<Table> evicted = new ArrayList<Table>();
+        long total = 0;
+        for (Table table : tables.values()) {
+            total += table.getMemorySize();
+        }
+        Iterator<Table> iterator = tables.values().iterator();
+        while (total > budget && iterator.hasNext()) {
+            Table table = iterator.next();
+            if (table == pinned || table.isInUse()) {
+                continue;
+            }
+            if (table.isDirty()) {
+                table.save();
+            }
+            table.close();
+            total -= table.getMemorySize();
+            iterator.remove();
+            evicted.add(table);
+        }
+        return evicted;
+    }
+
+    public Collection<Table> getTables() {
+        return tables.values();
+    }
+
+    public void saveAll() throws Exception {
+        for (Table table : tables.values()) {
+            table.save();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.Durability;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RateLimiter;
+import ru.fizteh.fivt.students.andrewzhernov.storage.StorageEngine;
+
+public class TableConfig {
+    private StorageEngine engine;
+    private Durability durability;
+    private int syncOps;
+    private long syncMillis;
+    private boolean lazy;
+    private int compressionLevel;
+    private int shardRecords;
+    private long checkpointMillis;
+    private RateLimiter checkpointLimiter;
+    private long sweepMillis;
+
+    public TableConfig(StorageEngine engine, Durability durability, int syncOps, long syncMillis, boolean lazy,
+            int compressionLevel, int shardRecords, long checkpointMillis, long checkpointRate,
+            long sweepMillis) throws Exception {
+        if (syncOps < 1 || syncMillis < 0) {
+            throw new Exception("fizteh.db.sync.ops must be positive and fizteh.db.sync.ms non-negative");
+        }
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new Exception("fizteh.db.compression.level must be between 0 and 9");
+        }
+        if (shardRecords < 1) {
+            throw new Exception("fizteh.db.shard.records must be positive");
+        }
+        if (checkpointMillis < 0 || checkpointRate < 0) {
+            throw new Exception("fizteh.db.checkpoint.ms and fizteh.db.checkpoint.rate must be non-negative");
+        }
+        if (sweepMillis < 0) {
+            throw new Exception("fizteh.db.ttl.sweep.ms must be non-negative");
+        }
+        this.engine = engine;
+        this.durability = durability;
+        this.syncOps = syncOps;
+        this.syncMillis = syncMillis;
+        this.lazy = lazy;
+        this.compressionLevel = compressionLevel;
+        this.shardRecords = shardRecords;
+        this.checkpointMillis = checkpointMillis;
+        checkpointLimiter = new RateLimiter(checkpointRate);
+        this.sweepMillis = sweepMillis;
+    }
+
+    public static TableConfig fromProperties() throws Exception {
+        return new TableConfig(
+                StorageEngine.parse(System.getProperty("fizteh.db.storage", "heap")),
+                Durability.parse(System.getProperty("fizteh.db.durability", "none")),
+                Integer.parseInt(System.getProperty("fizteh.db.sync.ops", "64")),
+                Long.parseLong(System.getProperty("fizteh.db.sync.ms", "10")),
+                Boolean.parseBoolean(System.getProperty("fizteh.db.lazy", "false")),
+                Integer.parseInt(System.getProperty("fizteh.db.compression.level", "1")),
+                Integer.parseInt(System.getProperty("fizteh.db.shard.records", "65536")),
+                Long.parseLong(System.getProperty("fizteh.db.checkpoint.ms", "5000")),
+                Long.parseLong(System.getProperty("fizteh.db.checkpoint.rate", "0")),
+                Long.parseLong(System.getProperty("fizteh.db.ttl.sweep.ms", "1000")));
+    }
+
+    public StorageEngine getEngine() {
+        return engine;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public int getSyncOps() {
+        return syncOps;
+    }
+
+    public long getSyncMillis() {
+        return syncMillis;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getShardRecords() {
+        return shardRecords;
+    }
+
+    public long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    public RateLimiter getCheckpointLimiter() {
+        return checkpointLimiter;
+    }
+
+    public long getSweepMillis() {
+        return sweepMillis;
+    }
+}
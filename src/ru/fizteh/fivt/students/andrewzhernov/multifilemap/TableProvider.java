@@ -0,0 +1,187 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
+import ru.fizteh.fivt.students.andrewzhernov.storage.Checkpointer;
+import ru.fizteh.fivt.students.andrewzhernov.storage.Sweeper;
+
+public class TableProvider {
+    private Map<String, Integer> recordsCount;
+    private TableCache cache;
+    private Path dir;
+    private TableConfig config;
+
+    public TableProvider(String directory) throws Exception {
+        if (directory == null) {
+            throw new Exception("Usage: java -Dfizteh.db.dir=<name> ...");
+        }
+        recordsCount = new HashMap<String, Integer>();
+        config = TableConfig.fromProperties();
+        long budget = Long.parseLong(System.getProperty("fizteh.db.cache.bytes",
+                Long.toString(Runtime.getRuntime().maxMemory() / 4)));
+        cache = new TableCache(budget);
+        dir = Paths.get(directory);
+        if (!Files.exists(dir)) {
+            Files.createDirectory(dir);
+        } else {
+            for (String tablename : dir.toFile().list()) {
+                Path tablePath = dir.resolve(tablename);
+                Manifest manifest = Manifest.read(tablePath);
+                if (Table.hasJournal(tablePath)) {
+                    Table recovered = newTable(tablename);
+                    recovered.load();
+                    recovered.save();
+                    recovered.close();
+                    manifest = Manifest.read(tablePath);
+                } else if (manifest == null || manifest.isStale(tablePath)) {
+                    Table rebuilt = newTable(tablename);
+                    rebuilt.load();
+                    manifest = Manifest.build(tablePath, rebuilt.size());
+                    manifest.write(tablePath, config.getDurability().isForced());
+                    rebuilt.close();
+                }
+                recordsCount.put(tablename, manifest.getRecordsCount());
+            }
+        }
+        if (config.getCheckpointMillis() > 0) {
+            Checkpointer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    checkpoint();
+                }
+            }, config.getCheckpointMillis());
+        }
+        if (config.getSweepMillis() > 0) {
+            Sweeper.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sweep();
+                }
+            }, config.getSweepMillis());
+        }
+    }
+
+    private void sweep() {
+        IllegalStateException failure = null;
+        for (Table table : getTables()) {
+            try {
+                table.sweep();
+            } catch (Exception e) {
+                failure = new IllegalStateException("table " + table.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkpoint() {
+        IllegalStateException failure = null;
+        for (Table table : getTables()) {
+            try {
+                table.checkpoint();
+            } catch (Exception e) {
+                failure = new IllegalStateException("table " + table.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Table newTable(String tablename) throws Exception {
+        return Table.open(tablename, dir.resolve(tablename), config);
+    }
+
+    public synchronized Table getTable(String tablename) throws Exception {
+        if (!recordsCount.containsKey(tablename)) {
+            return null;
+        }
+        Table table = cache.get(tablename);
+        if (table == null) {
+            table = newTable(tablename);
+            table.load();
+            cache.put(table);
+        }
+        evict(table);
+        return table;
+    }
+
+    public synchronized Table createTable(String tablename, boolean sorted, boolean compressed) throws Exception {
+        return createTable(tablename, sorted, compressed, null);
+    }
+
+    public synchronized Table createTable(String tablename, boolean sorted, boolean compressed, Schema schema)
+            throws Exception {
+        Path tablePath = dir.resolve(tablename);
+        if (Files.isDirectory(tablePath)) {
+            return null;
+        }
+        Files.createDirectory(tablePath);
+        boolean force = config.getDurability().isForced();
+        if (schema != null) {
+            schema.write(tablePath, force);
+            Table.createPacked(tablePath);
+        }
+        if (sorted) {
+            SortedTable.create(tablePath, force);
+        } else {
+            if (compressed) {
+                ShardedTable.createCompressed(tablePath);
+            }
+            ShardLayout.forSize(0, config.getShardRecords()).write(tablePath, force);
+        }
+        Manifest.build(tablePath, 0).write(tablePath, force);
+        if (force) {
+            AppendLog.syncDirectory(dir);
+        }
+        recordsCount.put(tablename, 0);
+        return getTable(tablename);
+    }
+
+    public synchronized boolean removeTable(String tablename) throws Exception {
+        Path tablePath = dir.resolve(tablename);
+        if (!Files.isDirectory(tablePath)) {
+            return false;
+        }
+        cache.remove(tablename);
+        Utils.remove(tablePath);
+        recordsCount.remove(tablename);
+        return true;
+    }
+
+    public synchronized Map<String, Integer> getTableSizes() {
+        Map<String, Table> resident = new HashMap<String, Table>();
+        for (Table table : cache.getTables()) {
+            resident.put(table.getName(), table);
+        }
+        Map<String, Integer> sizes = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, Integer> entry : recordsCount.entrySet()) {
+            Table table = resident.get(entry.getKey());
+            sizes.put(entry.getKey(), table != null ? table.size() : entry.getValue());
+        }
+        return sizes;
+    }
+
+    public synchronized List<Table> getTables() {
+        return new ArrayList<Table>(cache.getTables());
+    }
+
+    public synchronized void evict(Table pinned) throws Exception {
+        for (Table evicted : cache.evict(pinned)) {
+            recordsCount.put(evicted.getName(), evicted.size());
+        }
+    }
+
+    public synchronized void saveTables() throws Exception {
+        cache.saveAll();
+    }
+}
@@ -0,0 +1,207 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class Transaction {
+    private Table table;
+    private long snapshot;
+    private Map<String, String> changes;
+    private boolean closed;
+
+    Transaction(Table table, long snapshot) {
+        this.table = table;
+        this.snapshot = snapshot;
+        changes = new HashMap<String, String>();
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Transaction on table " + table.getName() + " is closed");
+        }
+    }
+
+    public String get(String key) throws Exception {
+        checkOpen();
+        long now = System.currentTimeMillis();
+        if (changes.containsKey(key)) {
+            return Expiry.live(changes.get(key), now);
+        }
+        String stored = table.getSnapshot(key, snapshot);
+        if (stored != null && Expiry.isExpired(stored, now)) {
+            table.expire(key);
+            return null;
+        }
+        return Expiry.live(stored, now);
+    }
+
+    public String put(String key, String value) throws Exception {
+        return put(key, value, 0);
+    }
+
+    public String put(String key, String value, long ttlMillis) throws Exception {
+        return store(key, table.checkPacked(value), ttlMillis);
+    }
+
+    private String store(String key, String value, long ttlMillis) throws Exception {
+        String old = get(key);
+        changes.put(key, Expiry.encode(value, Table.deadline(ttlMillis)));
+        return old;
+    }
+
+    public Tuple getTuple(String key) throws Exception {
+        return table.toTuple(get(key));
+    }
+
+    public Tuple putTuple(String key, Tuple value) throws Exception {
+        table.checkSchema(value);
+        return table.toTuple(store(key, value.getPacked(), 0));
+    }
+
+    public String remove(String key) throws Exception {
+        String old = get(key);
+        if (old != null) {
+            changes.put(key, null);
+        }
+        return old;
+    }
+
+    public int size() throws Exception {
+        checkOpen();
+        int size = table.size();
+        for (String key : table.changedSince(snapshot)) {
+            if (table.read(key) != null) {
+                --size;
+            }
+            if (table.getSnapshot(key, snapshot) != null) {
+                ++size;
+            }
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            boolean stored = table.getSnapshot(change.getKey(), snapshot) != null;
+            if (change.getValue() != null && !stored) {
+                ++size;
+            } else if (change.getValue() == null && stored) {
+                --size;
+            }
+        }
+        return size;
+    }
+
+    private Map<String, String> getEffectiveChanges() throws Exception {
+        Map<String, String> effective = new HashMap<String, String>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String stored = table.getSnapshot(change.getKey(), snapshot);
+            if (stored != null && Expiry.isExpired(stored, now)) {
+                stored = null;
+            }
+            String value = change.getValue();
+            if (stored == null ? value != null : !stored.equals(value)) {
+                effective.put(change.getKey(), value);
+            }
+        }
+        return effective;
+    }
+
+    public int getChangesCount() throws Exception {
+        checkOpen();
+        return getEffectiveChanges().size();
+    }
+
+    public int commit() throws Exception {
+        checkOpen();
+        Map<String, String> effective = getEffectiveChanges();
+        if (!effective.isEmpty()) {
+            table.commit(effective, snapshot);
+        }
+        restart();
+        return effective.size();
+    }
+
+    public int rollback() throws Exception {
+        int count = getChangesCount();
+        restart();
+        return count;
+    }
+
+    private void restart() {
+        changes.clear();
+        table.end(snapshot);
+        snapshot = table.snapshot();
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            table.end(snapshot);
+        }
+    }
+
+    public List<String> list() throws Exception {
+        checkOpen();
+        Set<String> keys = new LinkedHashSet<String>();
+        for (String key : table.list()) {
+            keys.add(key);
+        }
+        long now = System.currentTimeMillis();
+        for (String key : table.changedSince(snapshot)) {
+            if (Expiry.live(table.getSnapshot(key, snapshot), now) != null) {
+                keys.add(key);
+            } else {
+                keys.remove(key);
+            }
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (Expiry.live(change.getValue(), now) != null) {
+                keys.add(change.getKey());
+            } else {
+                keys.remove(change.getKey());
+            }
+        }
+        return new ArrayList<String>(keys);
+    }
+
+    public Iterator<Map.Entry<String, String>> scan(String from, String to) throws Exception {
+        checkOpen();
+        List<String> changed = table.changedSince(snapshot);
+        if (changed.isEmpty() && changes.isEmpty()) {
+            return table.scan(from, to);
+        }
+        TreeMap<String, String> records = new TreeMap<String, String>();
+        Iterator<Map.Entry<String, String>> stored = table.scan(from, to);
+        while (stored.hasNext()) {
+            Map.Entry<String, String> record = stored.next();
+            records.put(record.getKey(), record.getValue());
+        }
+        long now = System.currentTimeMillis();
+        for (String key : changed) {
+            overlay(records, key, Expiry.live(table.getSnapshot(key, snapshot), now), from, to);
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            overlay(records, change.getKey(), Expiry.live(change.getValue(), now), from, to);
+        }
+        return records.entrySet().iterator();
+    }
+
+    private static void overlay(TreeMap<String, String> records, String key, String value, String from, String to) {
+        if ((from != null && key.compareTo(from) < 0) || (to != null && key.compareTo(to) >= 0)) {
+            return;
+        }
+        if (value == null) {
+            records.remove(key);
+        } else {
+            records.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.charset.StandardCharsets;
+
+public class Tuple {
+    private Schema schema;
+    private String packed;
+
+    Tuple(Schema schema, String packed) {
+        this.schema = schema;
+        this.packed = packed;
+    }
+
+    public static Tuple wrap(Schema schema, String packed) throws Exception {
+        Tuple tuple = new Tuple(schema, packed);
+        for (int i = 0; i < packed.length(); ++i) {
+            if (packed.charAt(i) > 0xFF) {
+                throw new Exception("wrong type (value is not a packed " + schema + " tuple)");
+            }
+        }
+        int columns = schema.getColumnCount();
+        boolean valid;
+        try {
+            valid = packed.length() >= schema.getBitmapSize()
+                    && tuple.offsetOf(columns - 1) + tuple.widthAt(columns - 1) == packed.length();
+        } catch (IndexOutOfBoundsException e) {
+            valid = false;
+        }
+        if (!valid) {
+            throw new Exception("wrong type (value is not a packed " + schema + " tuple)");
+        }
+        return tuple;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public String getPacked() {
+        return packed;
+    }
+
+    private int byteAt(int offset) {
+        return packed.charAt(offset);
+    }
+
+    private int intAt(int offset) {
+        return byteAt(offset) << 24 | byteAt(offset + 1) << 16 | byteAt(offset + 2) << 8 | byteAt(offset + 3);
+    }
+
+    private long longAt(int offset) {
+        return (long) intAt(offset) << 32 | intAt(offset + 4) & 0xFFFFFFFFL;
+    }
+
+    private int lengthAt(int offset) {
+        int length = 0;
+        int shift = 0;
+        int next;
+        do {
+            next = byteAt(offset++);
+            length |= (next & 0x7F) << shift;
+            shift += 7;
+        } while ((next & 0x80) != 0);
+        return length;
+    }
+
+    static int lengthSize(int length) {
+        int size = 1;
+        while (length >= 0x80) {
+            length >>>= 7;
+            ++size;
+        }
+        return size;
+    }
+
+    private int widthAt(int column) {
+        ColumnType type = schema.getType(column);
+        if (type.isFixed()) {
+            return type.getWidth();
+        }
+        int offset = offsetOf(column);
+        int length = lengthAt(offset);
+        return lengthSize(length) + length;
+    }
+
+    private int offsetOf(int column) {
+        int offset = schema.getOffset(column);
+        if (offset >= 0) {
+            return offset;
+        }
+        int first = schema.getFirstVariable();
+        offset = schema.getOffset(first);
+        for (int i = first; i < column; ++i) {
+            ColumnType type = schema.getType(i);
+            if (type.isFixed()) {
+                offset += type.getWidth();
+            } else {
+                int length = lengthAt(offset);
+                offset += lengthSize(length) + length;
+            }
+        }
+        return offset;
+    }
+
+    private int column(int column, ColumnType type) {
+        if (schema.getType(column) != type) {
+            throw new IllegalArgumentException("Column " + column + " is " + schema.getType(column).getName()
+                    + ", not " + type.getName());
+        }
+        if (isNull(column)) {
+            throw new IllegalStateException("Column " + column + " is null");
+        }
+        return offsetOf(column);
+    }
+
+    public boolean isNull(int column) {
+        return (byteAt(column >>> 3) & 1 << (column & 7)) != 0;
+    }
+
+    public int getInt(int column) {
+        return intAt(column(column, ColumnType.INT));
+    }
+
+    public long getLong(int column) {
+        return longAt(column(column, ColumnType.LONG));
+    }
+
+    public byte getByte(int column) {
+        return (byte) byteAt(column(column, ColumnType.BYTE));
+    }
+
+    public float getFloat(int column) {
+        return Float.intBitsToFloat(intAt(column(column, ColumnType.FLOAT)));
+    }
+
+    public double getDouble(int column) {
+        return Double.longBitsToDouble(longAt(column(column, ColumnType.DOUBLE)));
+    }
+
+    public boolean getBoolean(int column) {
+        return byteAt(column(column, ColumnType.BOOLEAN)) != 0;
+    }
+
+    public String getString(int column) {
+        if (schema.getType(column) == ColumnType.STRING && isNull(column)) {
+            return null;
+        }
+        int offset = column(column, ColumnType.STRING);
+        int length = lengthAt(offset);
+        offset += lengthSize(length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = (byte) byteAt(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Tuple && packed.equals(((Tuple) other).packed)
+                && schema.equals(((Tuple) other).schema);
+    }
+
+    @Override
+    public int hashCode() {
+        return packed.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return schema.format(this);
+    }
+}
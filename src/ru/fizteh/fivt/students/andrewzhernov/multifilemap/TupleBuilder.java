@@ -0,0 +1,107 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.nio.charset.StandardCharsets;
+
+public class TupleBuilder {
+    private Schema schema;
+    private long[] fixed;
+    private byte[][] strings;
+    private boolean[] present;
+
+    TupleBuilder(Schema schema) {
+        this.schema = schema;
+        fixed = new long[schema.getColumnCount()];
+        strings = new byte[schema.getColumnCount()][];
+        present = new boolean[schema.getColumnCount()];
+    }
+
+    private TupleBuilder set(int column, ColumnType type, long bits) {
+        if (schema.getType(column) != type) {
+            throw new IllegalArgumentException("Column " + column + " is " + schema.getType(column).getName()
+                    + ", not " + type.getName());
+        }
+        fixed[column] = bits;
+        present[column] = true;
+        return this;
+    }
+
+    public TupleBuilder setInt(int column, int value) {
+        return set(column, ColumnType.INT, value);
+    }
+
+    public TupleBuilder setLong(int column, long value) {
+        return set(column, ColumnType.LONG, value);
+    }
+
+    public TupleBuilder setByte(int column, byte value) {
+        return set(column, ColumnType.BYTE, value);
+    }
+
+    public TupleBuilder setFloat(int column, float value) {
+        return set(column, ColumnType.FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public TupleBuilder setDouble(int column, double value) {
+        return set(column, ColumnType.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public TupleBuilder setBoolean(int column, boolean value) {
+        return set(column, ColumnType.BOOLEAN, value ? 1 : 0);
+    }
+
+    public TupleBuilder setString(int column, String value) {
+        if (value == null) {
+            return setNull(column);
+        }
+        set(column, ColumnType.STRING, 0);
+        strings[column] = value.getBytes(StandardCharsets.UTF_8);
+        return this;
+    }
+
+    public TupleBuilder setNull(int column) {
+        present[column] = false;
+        strings[column] = null;
+        return this;
+    }
+
+    public Tuple build() {
+        int columns = schema.getColumnCount();
+        int size = schema.getBitmapSize();
+        for (int column = 0; column < columns; ++column) {
+            ColumnType type = schema.getType(column);
+            if (type.isFixed()) {
+                size += type.getWidth();
+            } else {
+                int length = present[column] ? strings[column].length : 0;
+                size += Tuple.lengthSize(length) + length;
+            }
+        }
+        char[] packed = new char[size];
+        for (int column = 0; column < columns; ++column) {
+            if (!present[column]) {
+                packed[column >>> 3] |= 1 << (column & 7);
+            }
+        }
+        int offset = schema.getBitmapSize();
+        for (int column = 0; column < columns; ++column) {
+            ColumnType type = schema.getType(column);
+            if (type.isFixed()) {
+                for (int i = type.getWidth() - 1; i >= 0; --i) {
+                    packed[offset++] = (char) (fixed[column] >>> (i * 8) & 0xFF);
+                }
+            } else {
+                byte[] bytes = present[column] ? strings[column] : new byte[0];
+                int length = bytes.length;
+                while (length >= 0x80) {
+                    packed[offset++] = (char) (length & 0x7F | 0x80);
+                    length >>>= 7;
+                }
+                packed[offset++] = (char) length;
+                for (byte b : bytes) {
+                    packed[offset++] = (char) (b & 0xFF);
+                }
+            }
+        }
+        return new Tuple(schema, new String(packed));
+    }
+}
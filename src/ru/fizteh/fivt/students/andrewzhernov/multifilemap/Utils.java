@@ -1,8 +1,14 @@
 package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.AppendLog;
 
 public class Utils {
     static void remove(Path directory) throws Exception {
@@ -17,4 +23,22 @@ public class Utils {
             throw new Exception("Cannot delete " + directory.toString());
         }
     }
+
+    static void replace(Path target, byte[] bytes, boolean force) throws Exception {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (force) {
+            AppendLog.syncDirectory(target.getParent());
+        }
+    }
 }
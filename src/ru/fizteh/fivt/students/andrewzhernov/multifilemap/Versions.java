@@ -0,0 +1,135 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Versions {
+    private static final int PRUNE_INTERVAL = 1024;
+    private static final int MIN_PRUNE_SIZE = 64 * 1024;
+
+    private AtomicLong allocated;
+    private AtomicLong visible;
+    private ConcurrentHashMap<String, Version> history;
+    private TreeMap<Long, Integer> active;
+    private volatile int pruneSize = MIN_PRUNE_SIZE;
+
+    public Versions() {
+        allocated = new AtomicLong();
+        visible = new AtomicLong();
+        history = new ConcurrentHashMap<String, Version>();
+        active = new TreeMap<Long, Integer>();
+    }
+
+    public long begin() {
+        synchronized (active) {
+            long snapshot = visible.get();
+            Integer count = active.get(snapshot);
+            active.put(snapshot, count == null ? 1 : count + 1);
+            return snapshot;
+        }
+    }
+
+    public void end(long snapshot) {
+        synchronized (active) {
+            Integer count = active.get(snapshot);
+            if (count == null) {
+                return;
+            }
+            if (count == 1) {
+                active.remove(snapshot);
+            } else {
+                active.put(snapshot, count - 1);
+            }
+        }
+        prune();
+    }
+
+    public boolean isInUse() {
+        synchronized (active) {
+            return !active.isEmpty();
+        }
+    }
+
+    public long allocate() {
+        return allocated.incrementAndGet();
+    }
+
+    public void publish(long version) {
+        while (!visible.compareAndSet(version - 1, version)) {
+            Thread.yield();
+        }
+        if (version % PRUNE_INTERVAL == 0 || history.size() > pruneSize) {
+            prune();
+        }
+    }
+
+    public void record(String key, String previous, long version) {
+        history.put(key, new Version(version, previous, history.get(key)));
+    }
+
+    public Version head(String key) {
+        return history.get(key);
+    }
+
+    public boolean conflicts(String key, long snapshot) {
+        Version head = history.get(key);
+        return head != null && head.version > snapshot;
+    }
+
+    public static String undo(Version head, String current, long snapshot) {
+        String value = current;
+        for (Version version = head; version != null && version.version > snapshot; version = version.older) {
+            value = version.previous;
+        }
+        return value;
+    }
+
+    public List<String> changedSince(long snapshot) {
+        List<String> keys = new ArrayList<String>();
+        for (Map.Entry<String, Version> entry : history.entrySet()) {
+            if (entry.getValue().version > snapshot) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    private void prune() {
+        long oldest = visible.get();
+        synchronized (active) {
+            if (!active.isEmpty()) {
+                oldest = Math.min(oldest, active.firstKey());
+            }
+        }
+        for (Map.Entry<String, Version> entry : history.entrySet()) {
+            Version head = entry.getValue();
+            if (head.version <= oldest) {
+                history.remove(entry.getKey(), head);
+                continue;
+            }
+            for (Version version = head; version.older != null; version = version.older) {
+                if (version.older.version <= oldest) {
+                    version.older = null;
+                    break;
+                }
+            }
+        }
+        pruneSize = Math.max(MIN_PRUNE_SIZE, 2 * history.size());
+    }
+
+    public static class Version {
+        private final long version;
+        private final String previous;
+        private volatile Version older;
+
+        Version(long version, String previous, Version older) {
+            this.version = version;
+            this.previous = previous;
+            this.older = older;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ru.fizteh.fivt.students.andrewzhernov.result;
+
+public class MemoryResultSink implements ResultSink {
+    private StringBuilder buffer = new StringBuilder();
+
+    @Override
+    public void print(String text) {
+        buffer.append(text);
+    }
+
+    @Override
+    public void println(String text) {
+        buffer.append(text).append('\n');
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public String getText() {
+        return buffer.toString();
+    }
+
+    public void reset() {
+        buffer.setLength(0);
+    }
+}
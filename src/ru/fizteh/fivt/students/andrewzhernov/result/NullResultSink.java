@@ -0,0 +1,15 @@
+package ru.fizteh.fivt.students.andrewzhernov.result;
+
+public class NullResultSink implements ResultSink {
+    @Override
+    public void print(String text) {
+    }
+
+    @Override
+    public void println(String text) {
+    }
+
+    @Override
+    public void flush() {
+    }
+}
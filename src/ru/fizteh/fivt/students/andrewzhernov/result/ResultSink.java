@@ -0,0 +1,9 @@
+package ru.fizteh.fivt.students.andrewzhernov.result;
+
+public interface ResultSink {
+    void print(String text) throws Exception;
+
+    void println(String text) throws Exception;
+
+    void flush() throws Exception;
+}
@@ -0,0 +1,38 @@
+package ru.fizteh.fivt.students.andrewzhernov.result;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class StreamResultSink implements ResultSink {
+    private static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    private Writer writer;
+
+    public StreamResultSink(OutputStream out) {
+        this(out, Integer.parseInt(System.getProperty("fizteh.output.buffer",
+                Integer.toString(DEFAULT_THRESHOLD))));
+    }
+
+    public StreamResultSink(OutputStream out, int threshold) {
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), Math.max(threshold, 1));
+    }
+
+    @Override
+    public void print(String text) throws Exception {
+        writer.write(text);
+    }
+
+    @Override
+    public void println(String text) throws Exception {
+        writer.write(text);
+        writer.write('\n');
+    }
+
+    @Override
+    public void flush() throws Exception {
+        writer.flush();
+    }
+}
@@ -0,0 +1,175 @@
+package ru.fizteh.fivt.students.andrewzhernov.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LoadGenerator {
+    private int port;
+    private int requests;
+    private int pipeline;
+    private int keys;
+    private int putPercent;
+    private String table;
+    private AtomicLong errors;
+
+    public LoadGenerator(int port, int requests, int pipeline, int keys, int putPercent, String table) {
+        this.port = port;
+        this.requests = requests;
+        this.pipeline = pipeline;
+        this.keys = keys;
+        this.putPercent = putPercent;
+        this.table = table;
+        errors = new AtomicLong();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 7) {
+            System.err.println("Usage: LoadGenerator <port> <connections> <requests> <pipeline> "
+                    + "[<keys> [<put-percent> [<table>]]]");
+            System.exit(1);
+        }
+        try {
+            int connections = Integer.parseInt(args[1]);
+            LoadGenerator generator = new LoadGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), args.length > 4 ? Integer.parseInt(args[4]) : 10000,
+                    args.length > 5 ? Integer.parseInt(args[5]) : 50, args.length > 6 ? args[6] : null);
+            generator.run(connections);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void run(int connections) throws Exception {
+        if (connections < 1 || requests < 1 || pipeline < 1 || keys < 1 || putPercent < 0 || putPercent > 100) {
+            throw new Exception("connections, requests, pipeline and keys must be positive, put-percent 0..100");
+        }
+        final long[][] latencies = new long[connections][];
+        final Exception[] failures = new Exception[connections];
+        List<Thread> clients = new ArrayList<Thread>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; ++i) {
+            final int client = i;
+            Thread thread = new Thread("load-client-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        latencies[client] = drive(client);
+                    } catch (Exception e) {
+                        failures[client] = e;
+                    }
+                }
+            };
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        long[] all = new long[connections * requests];
+        for (int i = 0; i < connections; ++i) {
+            System.arraycopy(latencies[i], 0, all, i * requests, requests);
+        }
+        Arrays.sort(all);
+        System.out.format("requests %d, connections %d, pipeline %d, errors %d%n", all.length, connections, pipeline,
+                errors.get());
+        System.out.format("elapsed %.3f s, throughput %.0f ops/s%n", elapsed / 1e9, all.length / (elapsed / 1e9));
+        System.out.format("latency us: p50 %d, p99 %d, p999 %d, max %d%n", percentile(all, 0.5) / 1000,
+                percentile(all, 0.99) / 1000, percentile(all, 0.999) / 1000, all[all.length - 1] / 1000);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))];
+    }
+
+    private int readResponse(BufferedReader reader) throws Exception {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new Exception("Server closed the connection");
+        }
+        String[] parts = header.split(" ");
+        if (parts.length != 2 || !(parts[0].equals("OK") || parts[0].equals("ERR"))) {
+            throw new Exception("Malformed response header: " + header);
+        }
+        int lines = Integer.parseInt(parts[1]);
+        for (int i = 0; i < lines; ++i) {
+            reader.readLine();
+        }
+        if (parts[0].equals("ERR")) {
+            errors.incrementAndGet();
+        }
+        return lines;
+    }
+
+    private long[] drive(int client) throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            final OutputStream output = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new BufferedInputStream(socket.getInputStream(), 64 * 1024), StandardCharsets.UTF_8));
+            if (table != null) {
+                output.write(("create " + table + "\nuse " + table + "\n").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                readResponse(reader);
+                readResponse(reader);
+            }
+            final Semaphore window = new Semaphore(pipeline);
+            final AtomicLongArray sent = new AtomicLongArray(requests);
+            final long[] latencies = new long[requests];
+            final Exception[] failure = new Exception[1];
+            Thread receiver = new Thread("load-receiver-" + client) {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < requests; ++i) {
+                            readResponse(reader);
+                            latencies[i] = System.nanoTime() - sent.get(i);
+                            window.release();
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                        window.release(pipeline);
+                    }
+                }
+            };
+            receiver.start();
+            Random random = new Random(client);
+            for (int i = 0; i < requests && failure[0] == null; ++i) {
+                if (!window.tryAcquire()) {
+                    output.flush();
+                    window.acquire();
+                }
+                String key = "key" + random.nextInt(keys);
+                String command = random.nextInt(100) < putPercent ? "put " + key + " value" + i : "get " + key;
+                sent.set(i, System.nanoTime());
+                output.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            output.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            receiver.join();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return latencies;
+        }
+    }
+}
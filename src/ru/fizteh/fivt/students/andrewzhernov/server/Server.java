@@ -0,0 +1,384 @@
+package ru.fizteh.fivt.students.andrewzhernov.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import ru.fizteh.fivt.students.andrewzhernov.result.MemoryResultSink;
+
+public class Server {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING = 16 * 1024;
+    private static final int MAX_OUTPUT = 4 * 1024 * 1024;
+    private static final int FLUSH_EVERY = 256;
+    private static final int MAX_LINE = 1024 * 1024;
+
+    private int port;
+    private SessionFactory factory;
+    private Selector selector;
+    private ServerSocketChannel acceptor;
+    private ExecutorService workers;
+    private Queue<Connection> ready;
+    private volatile boolean running;
+
+    public Server(int port, SessionFactory factory) {
+        this.port = port;
+        this.factory = factory;
+        ready = new ConcurrentLinkedQueue<Connection>();
+    }
+
+    public static int getPort(String property) throws Exception {
+        String value = System.getProperty(property);
+        if (value == null) {
+            return -1;
+        }
+        int port = Integer.parseInt(value);
+        if (port < 0 || port > 65535) {
+            throw new Exception(property + " must be a port number");
+        }
+        return port;
+    }
+
+    public int getLocalPort() throws Exception {
+        return ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
+    }
+
+    public void bind() throws Exception {
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        int threads = Integer.parseInt(System.getProperty("fizteh.server.workers",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        if (threads < 1) {
+            throw new Exception("fizteh.server.workers must be positive");
+        }
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "server-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        running = true;
+    }
+
+    public void run() throws Exception {
+        if (selector == null) {
+            bind();
+        }
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    connection.update();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.abort();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            workers.shutdown();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void accept() throws Exception {
+        SocketChannel channel = acceptor.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        try {
+            connection.session = factory.open(connection.capture);
+        } catch (Exception e) {
+            channel.close();
+            return;
+        }
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private class Connection implements Runnable {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private Session session;
+        private ByteBuffer input;
+        private ByteArrayOutputStream line;
+        private ByteBuffer writing;
+        private MemoryResultSink capture;
+
+        private Queue<String> pending;
+        private ByteArrayOutputStream outgoing;
+        private boolean scheduled;
+        private boolean inputClosed;
+        private boolean exited;
+        private boolean closing;
+        private boolean finished;
+
+        Connection(SocketChannel channel) throws Exception {
+            this.channel = channel;
+            input = ByteBuffer.allocate(BUFFER_SIZE);
+            line = new ByteArrayOutputStream();
+            capture = new MemoryResultSink();
+            pending = new ArrayDeque<String>();
+            outgoing = new ByteArrayOutputStream();
+        }
+
+        void read() throws IOException {
+            input.clear();
+            int count = channel.read(input);
+            if (count < 0) {
+                synchronized (this) {
+                    inputClosed = true;
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                schedule();
+                return;
+            }
+            input.flip();
+            int lines = 0;
+            while (input.hasRemaining()) {
+                byte next = input.get();
+                if (next != '\n') {
+                    line.write(next);
+                    if (line.size() > MAX_LINE) {
+                        throw new IOException("Command line is too long");
+                    }
+                    continue;
+                }
+                String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                synchronized (this) {
+                    for (String command : text.split("\\s*;\\s*")) {
+                        if (!command.trim().isEmpty()) {
+                            pending.add(command);
+                            ++lines;
+                        }
+                    }
+                }
+            }
+            if (lines > 0) {
+                schedule();
+            }
+            throttle();
+        }
+
+        private synchronized void schedule() {
+            if (!scheduled) {
+                scheduled = true;
+                workers.execute(this);
+            }
+        }
+
+        private void throttle() {
+            boolean full;
+            synchronized (this) {
+                full = pending.size() > MAX_PENDING || outgoing.size() > MAX_OUTPUT;
+                if (inputClosed) {
+                    return;
+                }
+            }
+            if (full) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        void update() {
+            if (!key.isValid()) {
+                return;
+            }
+            boolean hasOutput;
+            boolean done;
+            synchronized (this) {
+                hasOutput = outgoing.size() > 0;
+                done = finished;
+            }
+            if (hasOutput || (writing != null && writing.hasRemaining())) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else if (done) {
+                abort();
+                return;
+            }
+            throttle();
+        }
+
+        void write() throws IOException {
+            if (writing == null || !writing.hasRemaining()) {
+                synchronized (this) {
+                    writing = ByteBuffer.wrap(outgoing.toByteArray());
+                    outgoing.reset();
+                }
+            }
+            channel.write(writing);
+            if (!writing.hasRemaining()) {
+                boolean done;
+                boolean empty;
+                synchronized (this) {
+                    empty = outgoing.size() == 0;
+                    done = finished;
+                }
+                if (empty) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    if (done) {
+                        abort();
+                        return;
+                    }
+                }
+            }
+            throttle();
+        }
+
+        void abort() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                return;
+            }
+            boolean close;
+            synchronized (this) {
+                inputClosed = true;
+                pending.clear();
+                close = !scheduled && !closing;
+                if (close) {
+                    scheduled = true;
+                }
+            }
+            if (close) {
+                workers.execute(this);
+            }
+        }
+
+        private byte[] respond(String command) {
+            capture.reset();
+            String status = "OK";
+            try {
+                if (command.trim().equals("exit")) {
+                    synchronized (this) {
+                        exited = true;
+                    }
+                } else {
+                    session.execute(command);
+                }
+            } catch (Exception e) {
+                capture.reset();
+                status = "ERR";
+                capture.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+            byte[] body = capture.getText().getBytes(StandardCharsets.UTF_8);
+            int lines = 0;
+            for (byte next : body) {
+                if (next == '\n') {
+                    ++lines;
+                }
+            }
+            boolean newline = body.length > 0 && body[body.length - 1] != '\n';
+            if (newline) {
+                ++lines;
+            }
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(body.length + 16);
+            byte[] header = (status + " " + lines + "\n").getBytes(StandardCharsets.UTF_8);
+            frame.write(header, 0, header.length);
+            frame.write(body, 0, body.length);
+            if (newline) {
+                frame.write('\n');
+            }
+            return frame.toByteArray();
+        }
+
+        private void notifySelector() {
+            ready.add(this);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            int executed = 0;
+            boolean close = false;
+            while (true) {
+                String command;
+                synchronized (this) {
+                    command = exited ? null : pending.poll();
+                    if (command == null) {
+                        scheduled = false;
+                        if ((inputClosed || exited) && !closing) {
+                            closing = true;
+                            close = true;
+                        }
+                        break;
+                    }
+                }
+                byte[] frame = respond(command);
+                synchronized (this) {
+                    outgoing.write(frame, 0, frame.length);
+                }
+                if (++executed % FLUSH_EVERY == 0) {
+                    notifySelector();
+                }
+            }
+            if (close) {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    System.err.println(e.getMessage());
+                }
+                synchronized (this) {
+                    finished = true;
+                    pending.clear();
+                }
+            }
+            notifySelector();
+        }
+    }
+}
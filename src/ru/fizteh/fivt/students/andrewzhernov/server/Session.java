@@ -0,0 +1,7 @@
+package ru.fizteh.fivt.students.andrewzhernov.server;
+
+public interface Session {
+    void execute(String command) throws Exception;
+
+    void close() throws Exception;
+}
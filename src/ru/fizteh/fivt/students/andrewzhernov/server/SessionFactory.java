@@ -0,0 +1,7 @@
+package ru.fizteh.fivt.students.andrewzhernov.server;
+
+import ru.fizteh.fivt.students.andrewzhernov.result.ResultSink;
+
+public interface SessionFactory {
+    Session open(ResultSink out) throws Exception;
+}
@@ -1,12 +1,20 @@
 package ru.fizteh.fivt.students.andrewzhernov.shell;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class Copy {
+    private static ForkJoinPool copiers;
+
     public static void execute(String[] args) throws Exception {
         File source = null;
         File destination = null;
@@ -39,35 +47,93 @@ public class Copy {
         copy(source, destination);
     }
 
+    private static synchronized ForkJoinPool getCopiers() {
+        if (copiers == null) {
+            int threads = Integer.parseInt(System.getProperty("fizteh.shell.cp.threads",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (threads < 1) {
+                throw new IllegalArgumentException("fizteh.shell.cp.threads must be positive");
+            }
+            copiers = new ForkJoinPool(threads);
+        }
+        return copiers;
+    }
+
     private static void copy(File source, File destination) throws Exception {
         if (source.isFile()) {
-            copyFile(source, destination);
-        } else {
-            copyDir(source, destination);
+            try {
+                copyFile(source, destination);
+            } catch (Exception e) {
+                throw new Exception("cp: can't read file");
+            }
+            return;
+        }
+        Queue<String> errors = new ConcurrentLinkedQueue<String>();
+        getCopiers().invoke(new CopyTask(source, destination, errors));
+        if (!errors.isEmpty()) {
+            List<String> messages = new ArrayList<String>(errors);
+            Collections.sort(messages);
+            throw new Exception(String.join(System.lineSeparator(), messages));
         }
     }
 
     private static void copyFile(File source, File destination) throws Exception {
-        InputStream input = null;
-        OutputStream output = null;
-
-        try {
-            input = new FileInputStream(source);
-            output = new FileOutputStream(destination);
-            Cat.printFile(input, output);
-        } catch (Exception e) {
-            throw new Exception("cp: can't read file");
-        } finally {
-            input.close();
-            output.close();
+        try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel output = FileChannel.open(destination.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                long count = input.transferTo(position, size - position, output);
+                if (count == 0) {
+                    long current = input.size();
+                    if (current >= size) {
+                        throw new Exception("cp: " + source.getPath() + ": can't read file");
+                    }
+                    size = current;
+                }
+                position += count;
+            }
         }
     }
 
-    private static void copyDir(File source, File destination) throws Exception {
-        destination.mkdir();
-        String[] list = source.list();
-        for (String fileName : list) {
-            copy(new File(source, fileName), new File(destination, fileName));
+    private static class CopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private File source;
+        private File destination;
+        private Queue<String> errors;
+
+        CopyTask(File source, File destination, Queue<String> errors) {
+            this.source = source;
+            this.destination = destination;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (!source.isDirectory()) {
+                try {
+                    copyFile(source, destination);
+                } catch (Exception e) {
+                    errors.add("cp: " + source.getPath() + ": can't read file");
+                }
+                return;
+            }
+            if (!destination.isDirectory() && !destination.mkdir()) {
+                errors.add("cp: " + destination.getPath() + ": no such file or directory");
+                return;
+            }
+            String[] list = source.list();
+            if (list == null) {
+                errors.add("cp: " + source.getPath() + ": can't read directory");
+                return;
+            }
+            List<CopyTask> children = new ArrayList<CopyTask>();
+            for (String fileName : list) {
+                children.add(new CopyTask(new File(source, fileName), new File(destination, fileName), errors));
+            }
+            ForkJoinTask.invokeAll(children);
         }
     }
 }
@@ -20,7 +20,7 @@ public class Move {
                 Remove.execute(removeArgs);
             } catch (Exception e) {
                 String newException = e.getMessage();
-                newException = newException.replaceFirst("(cp|rm):", "mv:");
+                newException = newException.replaceAll("(?m)^(cp|rm):", "mv:");
                 throw new Exception(newException);
             }
         }
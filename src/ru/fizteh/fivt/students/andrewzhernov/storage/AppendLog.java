@@ -0,0 +1,268 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Histogram;
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+public class AppendLog implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("bytes.written");
+    private static final Histogram SYNC = Metrics.histogram("log.sync");
+    private static ScheduledExecutorService flushers;
+
+    private FileChannel channel;
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream output;
+    private Durability durability;
+    private int syncOps;
+    private long appended;
+    private long synced;
+    private boolean syncing;
+    private Exception failure;
+    private ScheduledFuture<?> flusher;
+    private boolean latin1;
+
+    public AppendLog(Path path) throws Exception {
+        this(path, Durability.ASYNC, 1, 0);
+    }
+
+    public AppendLog(Path path, Durability durability, int syncOps, long syncMillis) throws Exception {
+        this(path, durability, syncOps, syncMillis, false);
+    }
+
+    public AppendLog(Path path, Durability durability, int syncOps, long syncMillis, boolean latin1)
+            throws Exception {
+        this.latin1 = latin1;
+        boolean created = !Files.exists(path);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (created && durability.isForced()) {
+            try {
+                syncDirectory(path.toAbsolutePath().getParent());
+            } catch (Exception e) {
+                channel.close();
+                throw e;
+            }
+        }
+        bytes = new ByteArrayOutputStream();
+        output = new DataOutputStream(bytes);
+        this.durability = durability;
+        this.syncOps = syncOps;
+        if (durability == Durability.GROUP && syncMillis > 0) {
+            flusher = getFlushers().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        syncAll();
+                    } catch (Exception e) {
+                        synchronized (AppendLog.this) {
+                            failure = e;
+                        }
+                    }
+                }
+            }, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getFlushers() {
+        if (flushers == null) {
+            flushers = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "log-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return flushers;
+    }
+
+    public static long replay(Path path, Map<String, String> records) throws Exception {
+        return replay(path, records, false);
+    }
+
+    public static long replay(Path path, Map<String, String> records, boolean keepTombstones) throws Exception {
+        long count = 0;
+        long validSize = 0;
+        try (RecordReader reader = new RecordReader(path)) {
+            while (reader.hasNext()) {
+                String key = reader.readString();
+                String value = reader.readString();
+                if (key == null) {
+                    throw new Exception(path + ": tombstone in place of a key at offset " + validSize);
+                }
+                if (value == null && !keepTombstones) {
+                    records.remove(key);
+                } else {
+                    records.put(key, value);
+                }
+                validSize = reader.getPosition();
+                ++count;
+            }
+        } catch (EOFException e) {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                file.truncate(validSize);
+            }
+        }
+        return count;
+    }
+
+    public static void syncDirectory(Path directory) throws Exception {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    public static void rewrite(Path path, Map<String, String> records) throws Exception {
+        Files.move(writeSnapshot(path, records, null), path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Path writeSnapshot(Path path, Map<String, String> records, RateLimiter limiter)
+            throws Exception {
+        Path temp = Paths.get(path.toString() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream output = Channels.newOutputStream(file);
+            if (limiter != null && limiter.isLimited()) {
+                output = new ThrottledOutputStream(output, limiter);
+            }
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+            for (Map.Entry<String, String> record : records.entrySet()) {
+                RecordWriter.writeString(stream, record.getKey());
+                RecordWriter.writeString(stream, record.getValue());
+            }
+            stream.flush();
+            file.force(true);
+            BYTES_WRITTEN.add(file.size());
+        }
+        return temp;
+    }
+
+    public static void appendTail(Path source, long offset, Path target) throws Exception {
+        try (FileChannel from = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel to = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long position = offset;
+            while (position < from.size()) {
+                position += from.transferTo(position, from.size() - position, to);
+            }
+            to.force(true);
+            BYTES_WRITTEN.add(position - offset);
+        }
+    }
+
+    public void append(String key, String value) throws Exception {
+        append(Collections.singletonMap(key, value));
+    }
+
+    public void append(Map<String, String> records) throws Exception {
+        long sequence;
+        long first;
+        synchronized (this) {
+            if (failure != null) {
+                Exception e = failure;
+                failure = null;
+                throw e;
+            }
+            bytes.reset();
+            for (Map.Entry<String, String> record : records.entrySet()) {
+                RecordWriter.writeString(output, record.getKey());
+                if (record.getValue() == null) {
+                    RecordWriter.writeTombstone(output);
+                } else {
+                    RecordWriter.writeString(output, record.getValue(), latin1);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            BYTES_WRITTEN.add(buffer.limit());
+            first = appended + 1;
+            appended += records.size();
+            sequence = appended;
+        }
+        if (durability == Durability.STRICT) {
+            sync(sequence);
+        } else if (durability == Durability.GROUP && (sequence / syncOps) != ((first - 1) / syncOps)) {
+            sync(sequence);
+        }
+    }
+
+    public void syncAll() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appended;
+        }
+        sync(sequence);
+    }
+
+    private void sync(long sequence) throws IOException {
+        long target;
+        synchronized (this) {
+            while (syncing && synced < sequence) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for log sync");
+                }
+            }
+            if (synced >= sequence) {
+                return;
+            }
+            syncing = true;
+            target = appended;
+        }
+        boolean done = false;
+        try {
+            long start = System.nanoTime();
+            channel.force(false);
+            SYNC.record(System.nanoTime() - start);
+            done = true;
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (done) {
+                    synced = Math.max(synced, target);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.cancel(false);
+        }
+        if (durability.isForced()) {
+            syncAll();
+        }
+        channel.close();
+    }
+}
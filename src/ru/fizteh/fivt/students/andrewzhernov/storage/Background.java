@@ -0,0 +1,43 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class Background {
+    private static Map<String, ScheduledExecutorService> schedulers = new HashMap<String, ScheduledExecutorService>();
+
+    private static synchronized ScheduledExecutorService getScheduler(final String name) {
+        ScheduledExecutorService scheduler = schedulers.get(name);
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, name);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            schedulers.put(name, scheduler);
+        }
+        return scheduler;
+    }
+
+    public static ScheduledFuture<?> schedule(String name, final String failure, final Runnable task, long millis) {
+        return getScheduler(name).scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println(failure + ": " + e.getMessage());
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,189 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+public class BlockReader implements AutoCloseable {
+    private static final int HEADER_SIZE = 12;
+    private static final LongAdder BYTES_READ = Metrics.counter("bytes.read");
+
+    private Path path;
+    private DataInputStream input;
+    private long offset;
+
+    public BlockReader(Path path) throws Exception {
+        this.path = path;
+        input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+        try {
+            if (input.readInt() != BlockWriter.MAGIC) {
+                throw new Exception(path + ": not a block file");
+            }
+            int version = input.readInt();
+            if (version != BlockWriter.VERSION) {
+                throw new Exception(path + ": unsupported format version " + version);
+            }
+            int codec = input.readInt();
+            if (codec != BlockWriter.DEFLATE) {
+                throw new Exception(path + ": unsupported codec " + codec);
+            }
+        } catch (EOFException e) {
+            input.close();
+            throw new Exception(path + ": truncated header");
+        } catch (Exception e) {
+            input.close();
+            throw e;
+        }
+        offset = HEADER_SIZE;
+    }
+
+    public static boolean isBlockFile(Path path) throws Exception {
+        if (Files.size(path) < 4) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+            return input.readInt() == BlockWriter.MAGIC;
+        }
+    }
+
+    public List<Block> readBlocks() throws Exception {
+        List<Block> blocks = new ArrayList<Block>();
+        while (true) {
+            int rawLength;
+            try {
+                rawLength = input.readInt();
+            } catch (EOFException e) {
+                return blocks;
+            }
+            Block block = new Block(path, blocks.size(), offset);
+            try {
+                int storedLength = input.readInt();
+                int checksum = input.readInt();
+                if (rawLength <= 0 || storedLength <= 0 || storedLength > rawLength) {
+                    throw new Exception(block + ": corrupted block header");
+                }
+                block.rawLength = rawLength;
+                block.checksum = checksum;
+                block.payload = new byte[storedLength];
+                input.readFully(block.payload);
+            } catch (EOFException e) {
+                throw new Exception(block + ": truncated block");
+            }
+            offset += HEADER_SIZE + block.payload.length;
+            BYTES_READ.add(HEADER_SIZE + block.payload.length);
+            blocks.add(block);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    public static class Block {
+        private Path path;
+        private int index;
+        private long offset;
+        private int rawLength;
+        private int checksum;
+        private byte[] payload;
+
+        Block(Path path, int index, long offset) {
+            this.path = path;
+            this.index = index;
+            this.offset = offset;
+        }
+
+        public String[] decode() throws Exception {
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != checksum) {
+                throw new Exception(this + ": checksum mismatch");
+            }
+            byte[] raw = payload;
+            if (payload.length < rawLength) {
+                raw = new byte[rawLength];
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(payload);
+                    if (inflater.inflate(raw) != rawLength || !inflater.finished()) {
+                        throw new Exception(this + ": decompressed size doesn't match");
+                    }
+                } catch (DataFormatException e) {
+                    throw new Exception(this + ": corrupted compressed data");
+                } finally {
+                    inflater.end();
+                }
+            }
+            return parse(raw);
+        }
+
+        private String[] parse(byte[] raw) throws Exception {
+            List<String> fields = new ArrayList<String>();
+            ByteBuffer records = ByteBuffer.wrap(raw);
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer chars = CharBuffer.allocate(256);
+            try {
+                while (records.hasRemaining()) {
+                    int start = records.position();
+                    int length = records.getInt();
+                    boolean latin1 = length >= 0 && (length & RecordWriter.LATIN1) != 0;
+                    if (latin1) {
+                        length &= ~RecordWriter.LATIN1;
+                    }
+                    if (length < 0 || length > records.remaining()) {
+                        throw new Exception(this + ": corrupted record at block offset " + start);
+                    }
+                    if (latin1) {
+                        byte[] bytes = new byte[length];
+                        records.get(bytes);
+                        fields.add(new String(bytes, StandardCharsets.ISO_8859_1));
+                        continue;
+                    }
+                    if (chars.capacity() < length) {
+                        chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+                    }
+                    int limit = records.limit();
+                    records.limit(records.position() + length);
+                    chars.clear();
+                    decoder.reset();
+                    if (!decoder.decode(records, chars, true).isUnderflow()) {
+                        throw new Exception(this + ": malformed UTF-8 at block offset " + start);
+                    }
+                    records.limit(limit);
+                    fields.add(new String(chars.array(), 0, chars.position()));
+                }
+            } catch (BufferUnderflowException e) {
+                throw new Exception(this + ": truncated record");
+            }
+            if (fields.size() % 2 != 0) {
+                throw new Exception(this + ": key without value");
+            }
+            return fields.toArray(new String[fields.size()]);
+        }
+
+        @Override
+        public String toString() {
+            return path + ": block " + index + " at offset " + offset;
+        }
+    }
+}
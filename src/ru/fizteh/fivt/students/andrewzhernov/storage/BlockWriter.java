@@ -0,0 +1,85 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class BlockWriter implements AutoCloseable {
+    static final int MAGIC = 0xFB10C4D1;
+    static final int VERSION = 1;
+    static final int DEFLATE = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private DataOutputStream output;
+    private ByteArrayOutputStream block;
+    private DataOutputStream records;
+    private Deflater deflater;
+    private CRC32 checksum;
+    private byte[] buffer;
+    private boolean latin1;
+
+    public BlockWriter(OutputStream out, int level) throws Exception {
+        this(out, level, false);
+    }
+
+    public BlockWriter(OutputStream out, int level, boolean latin1) throws Exception {
+        this.latin1 = latin1;
+        output = new DataOutputStream(out);
+        block = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+        records = new DataOutputStream(block);
+        deflater = new Deflater(level);
+        checksum = new CRC32();
+        buffer = new byte[BLOCK_SIZE];
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(DEFLATE);
+    }
+
+    public void write(String key, String value) throws Exception {
+        RecordWriter.writeString(records, key);
+        RecordWriter.writeString(records, value, latin1);
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws Exception {
+        byte[] raw = block.toByteArray();
+        if (buffer.length < raw.length) {
+            buffer = new byte[raw.length];
+        }
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int stored = 0;
+        while (!deflater.finished() && stored < raw.length) {
+            stored += deflater.deflate(buffer, stored, raw.length - stored);
+        }
+        byte[] payload = buffer;
+        if (!deflater.finished() || stored >= raw.length) {
+            payload = raw;
+            stored = raw.length;
+        }
+        checksum.reset();
+        checksum.update(payload, 0, stored);
+        output.writeInt(raw.length);
+        output.writeInt(stored);
+        output.writeInt((int) checksum.getValue());
+        output.write(payload, 0, stored);
+        block.reset();
+    }
+
+    public void finish() throws Exception {
+        if (block.size() > 0) {
+            flushBlock();
+        }
+        output.flush();
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+}
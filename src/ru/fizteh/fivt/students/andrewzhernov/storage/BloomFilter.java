@@ -0,0 +1,127 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+public class BloomFilter {
+    public static final String SUFFIX = ".bloom";
+    private static final int MAGIC = 0x424c4f4e;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MAX_WORDS = 1 << 26;
+
+    private long[] words;
+    private int hashes;
+
+    public BloomFilter(long expectedKeys) {
+        long bits = (long) Math.ceil(-Math.max(expectedKeys, 1) * Math.log(FALSE_POSITIVE_RATE)
+                / (Math.log(2) * Math.log(2)));
+        words = new long[(int) Math.min(MAX_WORDS, Math.max(1, (bits + 63) / 64))];
+        hashes = (int) Math.max(1, Math.round((double) words.length * 64 / Math.max(expectedKeys, 1) * Math.log(2)));
+        hashes = Math.min(hashes, 16);
+    }
+
+    private BloomFilter(long[] words, int hashes) {
+        this.words = words;
+        this.hashes = hashes;
+    }
+
+    public static Path sidecar(Path data) {
+        return Paths.get(data.toString() + SUFFIX);
+    }
+
+    private static String generation(Path data) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(data, BasicFileAttributes.class);
+        return attributes.fileKey() + ":" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":"
+                + attributes.size();
+    }
+
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); ++i) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; ++i) {
+            long bit = ((first + (long) i * second) & Long.MAX_VALUE) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < hashes; ++i) {
+            long bit = ((first + (long) i * second) & Long.MAX_VALUE) % bits;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getMemorySize() {
+        return 8L * words.length;
+    }
+
+    public void write(Path data) throws Exception {
+        Path path = sidecar(data);
+        Path temp = Paths.get(path.toString() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeUTF(generation(data));
+            output.writeInt(hashes);
+            output.writeInt(words.length);
+            for (long word : words) {
+                output.writeLong(word);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static BloomFilter read(Path data) {
+        Path path = sidecar(data);
+        try {
+            if (!Files.exists(path) || !Files.exists(data)) {
+                return null;
+            }
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (input.readInt() != MAGIC || !input.readUTF().equals(generation(data))) {
+                    return null;
+                }
+                int hashes = input.readInt();
+                int count = input.readInt();
+                if (hashes < 1 || count < 1 || count > MAX_WORDS) {
+                    return null;
+                }
+                long[] words = new long[count];
+                for (int i = 0; i < count; ++i) {
+                    words[i] = input.readLong();
+                }
+                return new BloomFilter(words, hashes);
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.concurrent.ScheduledFuture;
+
+public class Checkpointer {
+    public static ScheduledFuture<?> schedule(Runnable checkpoint, long millis) {
+        return Background.schedule("checkpointer", "Checkpoint failed", checkpoint, millis);
+    }
+}
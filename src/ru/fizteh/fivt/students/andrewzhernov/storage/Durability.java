@@ -0,0 +1,18 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+public enum Durability {
+    NONE, ASYNC, GROUP, STRICT;
+
+    public static Durability parse(String name) throws Exception {
+        for (Durability durability : values()) {
+            if (durability.name().equalsIgnoreCase(name)) {
+                return durability;
+            }
+        }
+        throw new Exception("Unknown durability level " + name + ", expected none, async, group or strict");
+    }
+
+    public boolean isForced() {
+        return this == GROUP || this == STRICT;
+    }
+}
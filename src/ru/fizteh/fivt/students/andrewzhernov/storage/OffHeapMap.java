@@ -0,0 +1,329 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class OffHeapMap extends AbstractMap<String, String> {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    private List<ByteBuffer> chunks;
+    private long[] addresses;
+    private int[] hashes;
+    private int size;
+    private int used;
+    private long liveBytes;
+    private long garbageBytes;
+    private int modifications;
+
+    public OffHeapMap() {
+        chunks = new ArrayList<ByteBuffer>();
+        addresses = new long[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long encodeAddress(int chunk, int offset) {
+        return ((long) chunk << 32 | offset) + 1;
+    }
+
+    private ByteBuffer chunkOf(long address) {
+        return chunks.get((int) ((address - 1) >>> 32));
+    }
+
+    private static int offsetOf(long address) {
+        return (int) (address - 1);
+    }
+
+    private long allocate(int length) {
+        ByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || last.remaining() < length) {
+            int capacity = last == null ? MIN_CHUNK_SIZE : Math.min(CHUNK_SIZE, last.capacity() * 2);
+            last = ByteBuffer.allocateDirect(Math.max(capacity, length));
+            chunks.add(last);
+        }
+        long address = encodeAddress(chunks.size() - 1, last.position());
+        last.position(last.position() + length);
+        return address;
+    }
+
+    private long store(byte[] key, byte[] value) {
+        int length = HEADER_SIZE + key.length + value.length;
+        long address = allocate(length);
+        ByteBuffer chunk = chunkOf(address).duplicate();
+        chunk.position(offsetOf(address));
+        chunk.putInt(key.length).putInt(value.length).put(key).put(value);
+        liveBytes += length;
+        return address;
+    }
+
+    private int recordLength(long address) {
+        ByteBuffer chunk = chunkOf(address);
+        int offset = offsetOf(address);
+        return HEADER_SIZE + chunk.getInt(offset) + chunk.getInt(offset + 4);
+    }
+
+    private boolean keyEquals(long address, byte[] key) {
+        ByteBuffer chunk = chunkOf(address);
+        int offset = offsetOf(address);
+        if (chunk.getInt(offset) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; ++i) {
+            if (chunk.get(offset + HEADER_SIZE + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(long address, boolean value) {
+        ByteBuffer chunk = chunkOf(address).duplicate();
+        int offset = offsetOf(address);
+        int keyLength = chunk.getInt(offset);
+        int start = offset + HEADER_SIZE + (value ? keyLength : 0);
+        int length = value ? chunk.getInt(offset + 4) : keyLength;
+        chunk.limit(start + length);
+        chunk.position(start);
+        return StandardCharsets.UTF_8.decode(chunk).toString();
+    }
+
+    private int find(byte[] key, int hash) {
+        int mask = addresses.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            long address = addresses[slot];
+            if (address == EMPTY) {
+                return -1;
+            }
+            if (address != DELETED && hashes[slot] == hash && keyEquals(address, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(long address, int hash) {
+        int mask = addresses.length - 1;
+        int slot = mix(hash) & mask;
+        while (addresses[slot] != EMPTY && addresses[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        if (addresses[slot] == EMPTY) {
+            ++used;
+        }
+        addresses[slot] = address;
+        hashes[slot] = hash;
+    }
+
+    private void resize(int capacity) {
+        long[] oldAddresses = addresses;
+        int[] oldHashes = hashes;
+        addresses = new long[capacity];
+        hashes = new int[capacity];
+        used = 0;
+        for (int i = 0; i < oldAddresses.length; ++i) {
+            if (oldAddresses[i] != EMPTY && oldAddresses[i] != DELETED) {
+                insert(oldAddresses[i], oldHashes[i]);
+            }
+        }
+    }
+
+    private void compact() {
+        List<ByteBuffer> oldChunks = chunks;
+        chunks = new ArrayList<ByteBuffer>();
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int i = 0; i < addresses.length; ++i) {
+            long address = addresses[i];
+            if (address != EMPTY && address != DELETED) {
+                ByteBuffer source = oldChunks.get((int) ((address - 1) >>> 32)).duplicate();
+                int offset = offsetOf(address);
+                int length = HEADER_SIZE + source.getInt(offset) + source.getInt(offset + 4);
+                long moved = allocate(length);
+                ByteBuffer target = chunkOf(moved).duplicate();
+                source.limit(offset + length);
+                source.position(offset);
+                target.position(offsetOf(moved));
+                target.put(source);
+                addresses[i] = moved;
+                liveBytes += length;
+            }
+        }
+    }
+
+    private void release(long address) {
+        int length = recordLength(address);
+        liveBytes -= length;
+        garbageBytes += length;
+        if (garbageBytes > CHUNK_SIZE && garbageBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        String word = (String) key;
+        return find(word.getBytes(StandardCharsets.UTF_8), word.hashCode()) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String word = (String) key;
+        int slot = find(word.getBytes(StandardCharsets.UTF_8), word.hashCode());
+        return slot < 0 ? null : decode(addresses[slot], true);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = key.hashCode();
+        int slot = find(keyBytes, hash);
+        if (slot >= 0) {
+            long old = addresses[slot];
+            String previous = decode(old, true);
+            addresses[slot] = store(keyBytes, valueBytes);
+            release(old);
+            return previous;
+        }
+        if ((used + 1) * 4L > addresses.length * 3L) {
+            resize(size + 1 > addresses.length / 2 ? addresses.length * 2 : addresses.length);
+        }
+        insert(store(keyBytes, valueBytes), hash);
+        ++size;
+        ++modifications;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String word = (String) key;
+        int slot = find(word.getBytes(StandardCharsets.UTF_8), word.hashCode());
+        if (slot < 0) {
+            return null;
+        }
+        long address = addresses[slot];
+        String previous = decode(address, true);
+        addresses[slot] = DELETED;
+        --size;
+        ++modifications;
+        release(address);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        addresses = new long[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        size = 0;
+        used = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+        ++modifications;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                OffHeapMap.this.clear();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int next;
+        private int expected = modifications;
+        private String last;
+
+        EntryIterator() {
+            advance(0);
+        }
+
+        private void advance(int from) {
+            next = from;
+            while (next < addresses.length && (addresses[next] == EMPTY || addresses[next] == DELETED)) {
+                ++next;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < addresses.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (expected != modifications) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long address = addresses[next];
+            last = decode(address, false);
+            Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<String, String>(
+                    last, decode(address, true));
+            advance(next + 1);
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            if (expected != modifications) {
+                throw new ConcurrentModificationException();
+            }
+            OffHeapMap.this.remove(last);
+            expected = modifications;
+            last = null;
+        }
+    }
+}
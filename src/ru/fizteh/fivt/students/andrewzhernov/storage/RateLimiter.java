@@ -0,0 +1,34 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiter {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private long bytesPerSecond;
+    private long available;
+    private long updated;
+
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        updated = System.nanoTime();
+    }
+
+    public boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long elapsed = Math.min(now - updated, SECOND);
+        available = Math.min(bytesPerSecond, available + elapsed * bytesPerSecond / SECOND);
+        updated = now;
+        available -= bytes;
+        if (available < 0) {
+            TimeUnit.NANOSECONDS.sleep(-available * SECOND / bytesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public enum RecordFormat {
+    TSV, NATIVE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static RecordFormat parse(String name) throws Exception {
+        for (RecordFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new Exception("Unknown format " + name + ", expected tsv or native");
+    }
+
+    public RecordSource openSource(final Path path) throws Exception {
+        if (!Files.isRegularFile(path)) {
+            throw new Exception(path + ": no such file");
+        }
+        if (this == TSV) {
+            return new TsvReader(path);
+        }
+        final RecordReader reader = new RecordReader(path);
+        return new RecordSource() {
+            private String key;
+            private String value;
+
+            @Override
+            public boolean next() throws Exception {
+                if (!reader.hasNext()) {
+                    return false;
+                }
+                key = reader.readString();
+                value = reader.readString();
+                if (key == null) {
+                    throw new Exception(path + ": tombstone in place of a key at offset " + reader.getPosition());
+                }
+                return true;
+            }
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    public RecordSink openSink(Path path) throws Exception {
+        if (this == TSV) {
+            return new TsvWriter(path);
+        }
+        final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+        return new RecordSink() {
+            @Override
+            public void write(String key, String value) throws Exception {
+                RecordWriter.writeString(output, key);
+                RecordWriter.writeString(output, value);
+            }
+
+            @Override
+            public void close() throws IOException {
+                output.close();
+            }
+        };
+    }
+}
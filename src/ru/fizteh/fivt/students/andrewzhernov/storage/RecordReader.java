@@ -0,0 +1,158 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+public class RecordReader implements AutoCloseable {
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final LongAdder BYTES_READ = Metrics.counter("bytes.read");
+
+    private Path path;
+    private FileChannel channel;
+    private long size;
+    private long windowStart;
+    private ByteBuffer window;
+    private CharsetDecoder decoder;
+    private CharBuffer chars;
+    private boolean owner;
+
+    public RecordReader(Path path) throws Exception {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        owner = true;
+        init();
+        map(0);
+    }
+
+    private RecordReader(RecordReader source) {
+        path = source.path;
+        channel = source.channel;
+        size = source.size;
+        windowStart = source.windowStart;
+        window = source.window.duplicate();
+        init();
+    }
+
+    private void init() {
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        chars = CharBuffer.allocate(64);
+    }
+
+    public RecordReader duplicate() {
+        return new RecordReader(this);
+    }
+
+    private void map(long start) throws Exception {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+    }
+
+    public long getPosition() {
+        return windowStart + window.position();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean hasNext() {
+        return getPosition() < size;
+    }
+
+    public void seek(long position) throws Exception {
+        if (position < 0 || position > size) {
+            throw new Exception(path + ": offset " + position + " is out of file");
+        }
+        if (position >= windowStart && position <= windowStart + window.limit()) {
+            window.position((int) (position - windowStart));
+        } else {
+            map(position);
+        }
+    }
+
+    public int readInt() throws Exception {
+        ensure(4);
+        return window.getInt();
+    }
+
+    public long readLong() throws Exception {
+        ensure(8);
+        return window.getLong();
+    }
+
+    private void ensure(int length) throws Exception {
+        if (window.remaining() < length) {
+            if (getPosition() + length > size) {
+                throw new EOFException(path + ": unexpected end of file at offset " + getPosition());
+            }
+            map(getPosition());
+            if (window.remaining() < length) {
+                throw new Exception(path + ": record at offset " + getPosition() + " is too large");
+            }
+        }
+    }
+
+    public String readString() throws Exception {
+        long offset = getPosition();
+        ensure(4);
+        int length = window.getInt();
+        if (length == RecordWriter.TOMBSTONE) {
+            BYTES_READ.add(4);
+            return null;
+        } else if (length < 0) {
+            throw new Exception(path + ": corrupted record at offset " + offset);
+        }
+        boolean latin1 = (length & RecordWriter.LATIN1) != 0;
+        length &= ~RecordWriter.LATIN1;
+        ensure(length);
+        BYTES_READ.add(4 + length);
+        if (latin1) {
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        int limit = window.limit();
+        window.limit(window.position() + length);
+        try {
+            return decode(offset);
+        } finally {
+            window.limit(limit);
+        }
+    }
+
+    private String decode(long offset) throws Exception {
+        if (chars.capacity() < window.remaining()) {
+            chars = CharBuffer.allocate(Math.max(window.remaining(), chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(window, chars, true);
+        if (!result.isUnderflow()) {
+            throw new Exception(path + ": malformed UTF-8 at offset " + offset);
+        }
+        decoder.flush(chars);
+        return new String(chars.array(), 0, chars.position());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owner) {
+            channel.close();
+        }
+    }
+}
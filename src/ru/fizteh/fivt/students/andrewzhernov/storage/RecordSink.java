@@ -0,0 +1,10 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.IOException;
+
+public interface RecordSink extends AutoCloseable {
+    void write(String key, String value) throws Exception;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,14 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.IOException;
+
+public interface RecordSource extends AutoCloseable {
+    boolean next() throws Exception;
+
+    String getKey();
+
+    String getValue();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,42 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.DataOutput;
+import java.nio.charset.StandardCharsets;
+
+public class RecordWriter {
+    public static final int TOMBSTONE = -1;
+    public static final int LATIN1 = 0x40000000;
+
+    public static int writeString(DataOutput output, String word) throws Exception {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    public static int writeString(DataOutput output, String word, boolean latin1) throws Exception {
+        if (!latin1 || !isExtendedLatin1(word)) {
+            return writeString(output, word);
+        }
+        byte[] bytes = word.getBytes(StandardCharsets.ISO_8859_1);
+        output.writeInt(LATIN1 | bytes.length);
+        output.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static boolean isExtendedLatin1(String word) {
+        boolean ascii = true;
+        for (int i = 0; i < word.length(); ++i) {
+            if (word.charAt(i) > 0xFF) {
+                return false;
+            }
+            ascii &= word.charAt(i) < 0x80;
+        }
+        return !ascii;
+    }
+
+    public static int writeTombstone(DataOutput output) throws Exception {
+        output.writeInt(TOMBSTONE);
+        return 4;
+    }
+}
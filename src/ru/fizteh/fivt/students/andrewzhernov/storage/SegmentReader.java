@@ -0,0 +1,190 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class SegmentReader implements AutoCloseable {
+    private Path path;
+    private RecordReader reader;
+    private String[] blockKeys;
+    private long[] blockOffsets;
+    private long indexOffset;
+    private long recordCount;
+    private long indexSize;
+    private int references;
+    private boolean closed;
+
+    public SegmentReader(Path path) throws Exception {
+        this.path = path;
+        reader = new RecordReader(path);
+        try {
+            if (reader.getSize() < SegmentWriter.FOOTER_SIZE) {
+                throw new Exception(path + ": not a segment file");
+            }
+            reader.seek(reader.getSize() - SegmentWriter.FOOTER_SIZE);
+            indexOffset = reader.readLong();
+            int blocks = reader.readInt();
+            recordCount = reader.readLong();
+            int version = reader.readInt();
+            if (reader.readInt() != SegmentWriter.MAGIC || version != SegmentWriter.VERSION
+                    || indexOffset < 0 || blocks < 0 || indexOffset > reader.getSize()) {
+                throw new Exception(path + ": not a segment file");
+            }
+            blockKeys = new String[blocks];
+            blockOffsets = new long[blocks];
+            reader.seek(indexOffset);
+            for (int i = 0; i < blocks; ++i) {
+                blockKeys[i] = reader.readString();
+                blockOffsets[i] = reader.readLong();
+                indexSize += Long.SIZE + 2L * blockKeys[i].length();
+            }
+            references = 1;
+        } catch (Exception e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getIndexSize() {
+        return indexSize;
+    }
+
+    private int findBlock(String key) {
+        int low = 0;
+        int high = blockKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blockKeys[middle].compareTo(key) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private long blockEnd(int block) {
+        return block + 1 < blockOffsets.length ? blockOffsets[block + 1] : indexOffset;
+    }
+
+    private synchronized RecordReader retain() {
+        if (references == 0) {
+            throw new IllegalStateException(path + ": segment is closed");
+        }
+        ++references;
+        return reader.duplicate();
+    }
+
+    private synchronized void release() throws IOException {
+        if (--references == 0) {
+            reader.close();
+        }
+    }
+
+    public synchronized String get(String key) throws Exception {
+        int block = findBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        long end = blockEnd(block);
+        reader.seek(blockOffsets[block]);
+        while (reader.getPosition() < end) {
+            String current = reader.readString();
+            String value = reader.readString();
+            int compare = current.compareTo(key);
+            if (compare == 0) {
+                return value;
+            } else if (compare > 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public Iterator<Map.Entry<String, String>> scan(final String from, final String to) {
+        int block = from == null ? 0 : Math.max(findBlock(from), 0);
+        final long start = blockOffsets.length == 0 ? indexOffset : blockOffsets[block];
+        final RecordReader cursor = retain();
+        return new Iterator<Map.Entry<String, String>>() {
+            private long position = start;
+            private boolean finished;
+            private Map.Entry<String, String> next = advance();
+
+            private Map.Entry<String, String> advance() {
+                try {
+                    while (position < indexOffset) {
+                        cursor.seek(position);
+                        String key = cursor.readString();
+                        String value = cursor.readString();
+                        position = cursor.getPosition();
+                        if (to != null && key.compareTo(to) >= 0) {
+                            position = indexOffset;
+                            break;
+                        }
+                        if (from == null || key.compareTo(from) >= 0) {
+                            return new AbstractMap.SimpleImmutableEntry<String, String>(key, value);
+                        }
+                    }
+                    finish();
+                    return null;
+                } catch (Exception e) {
+                    position = indexOffset;
+                    try {
+                        finish();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw new IllegalStateException(path + ": " + e.getMessage(), e);
+                }
+            }
+
+            private void finish() throws IOException {
+                if (!finished) {
+                    finished = true;
+                    release();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> current = next;
+                next = advance();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        release();
+    }
+}
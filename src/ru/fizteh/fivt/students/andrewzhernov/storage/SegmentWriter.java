@@ -0,0 +1,118 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.fizteh.fivt.students.andrewzhernov.metrics.Metrics;
+
+public class SegmentWriter implements AutoCloseable {
+    private static final LongAdder BYTES_WRITTEN = Metrics.counter("bytes.written");
+    public static final int MAGIC = 0x5345474d;
+    public static final int VERSION = 1;
+    public static final int FOOTER_SIZE = 28;
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path path;
+    private Path temp;
+    private FileChannel channel;
+    private DataOutputStream output;
+    private boolean force;
+    private boolean finished;
+    private long position;
+    private long blockStart;
+    private long recordCount;
+    private String lastKey;
+    private List<String> blockKeys;
+    private List<Long> blockOffsets;
+    private BloomFilter filter;
+    private boolean latin1;
+
+    public SegmentWriter(Path path, boolean force, long expectedRecords) throws Exception {
+        this(path, force, expectedRecords, null);
+    }
+
+    public SegmentWriter(Path path, boolean force, long expectedRecords, RateLimiter limiter) throws Exception {
+        this(path, force, expectedRecords, limiter, false);
+    }
+
+    public SegmentWriter(Path path, boolean force, long expectedRecords, RateLimiter limiter, boolean latin1)
+            throws Exception {
+        this.path = path;
+        this.latin1 = latin1;
+        this.force = force;
+        filter = new BloomFilter(expectedRecords);
+        temp = Paths.get(path.toString() + ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream stream = Channels.newOutputStream(channel);
+        if (limiter != null && limiter.isLimited()) {
+            stream = new ThrottledOutputStream(stream, limiter);
+        }
+        output = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        blockStart = -1;
+        blockKeys = new ArrayList<String>();
+        blockOffsets = new ArrayList<Long>();
+    }
+
+    public void append(String key, String value) throws Exception {
+        if (lastKey != null && key.compareTo(lastKey) <= 0) {
+            throw new Exception(path + ": keys must be appended in ascending order");
+        }
+        if (blockStart < 0 || position - blockStart >= BLOCK_SIZE) {
+            blockStart = position;
+            blockKeys.add(key);
+            blockOffsets.add(position);
+        }
+        position += RecordWriter.writeString(output, key);
+        position += RecordWriter.writeString(output, value, latin1);
+        filter.add(key);
+        lastKey = key;
+        ++recordCount;
+    }
+
+    public void finish() throws Exception {
+        long indexOffset = position;
+        for (int i = 0; i < blockKeys.size(); ++i) {
+            RecordWriter.writeString(output, blockKeys.get(i));
+            output.writeLong(blockOffsets.get(i));
+        }
+        output.writeLong(indexOffset);
+        output.writeInt(blockKeys.size());
+        output.writeLong(recordCount);
+        output.writeInt(VERSION);
+        output.writeInt(MAGIC);
+        output.flush();
+        if (force) {
+            channel.force(false);
+        }
+        BYTES_WRITTEN.add(channel.size());
+        channel.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (force) {
+            AppendLog.syncDirectory(path.getParent());
+        }
+        filter.write(path);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
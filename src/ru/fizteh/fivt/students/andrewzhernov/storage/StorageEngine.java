@@ -0,0 +1,28 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public enum StorageEngine {
+    HEAP, OFFHEAP;
+
+    public static StorageEngine parse(String name) throws Exception {
+        for (StorageEngine engine : values()) {
+            if (engine.name().equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        throw new Exception("Unknown storage engine " + name + ", expected heap or offheap");
+    }
+
+    public Map<String, String> newMap() {
+        if (this == OFFHEAP) {
+            return new OffHeapMap();
+        }
+        return new ConcurrentHashMap<String, String>();
+    }
+
+    public boolean isConcurrent() {
+        return this == HEAP;
+    }
+}
@@ -0,0 +1,130 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class StripedMap extends AbstractMap<String, String> {
+    private AtomicReferenceArray<Map<String, String>> stripes;
+
+    public StripedMap(StorageEngine engine, int count) {
+        stripes = new AtomicReferenceArray<Map<String, String>>(count);
+        for (int i = 0; i < count; ++i) {
+            stripes.set(i, engine.newMap());
+        }
+    }
+
+    private StripedMap(AtomicReferenceArray<Map<String, String>> stripes) {
+        this.stripes = stripes;
+    }
+
+    public int getStripeCount() {
+        return stripes.length();
+    }
+
+    public int stripeOf(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % stripes.length();
+    }
+
+    public Map<String, String> getStripe(int stripe) {
+        return stripes.get(stripe);
+    }
+
+    public void setStripe(int stripe, Map<String, String> map) {
+        stripes.set(stripe, map);
+    }
+
+    public StripedMap snapshot() {
+        AtomicReferenceArray<Map<String, String>> copy = new AtomicReferenceArray<Map<String, String>>(
+                stripes.length());
+        for (int i = 0; i < stripes.length(); ++i) {
+            copy.set(i, stripes.get(i));
+        }
+        return new StripedMap(copy);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < stripes.length(); ++i) {
+            size += stripes.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && stripes.get(stripeOf(key)).containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+        return key == null ? null : stripes.get(stripeOf(key)).get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return stripes.get(stripeOf(key)).put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        return key == null ? null : stripes.get(stripeOf(key)).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < stripes.length(); ++i) {
+            stripes.get(i).clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return StripedMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int stripe;
+                    private Iterator<Map.Entry<String, String>> current = stripes.get(0).entrySet().iterator();
+                    private Iterator<Map.Entry<String, String>> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!current.hasNext() && stripe + 1 < stripes.length()) {
+                            current = stripes.get(++stripe).entrySet().iterator();
+                        }
+                        return current.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        last = current;
+                        return current.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        last.remove();
+                        last = null;
+                    }
+                };
+            }
+        };
+    }
+}
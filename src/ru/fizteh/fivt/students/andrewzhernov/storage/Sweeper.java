@@ -0,0 +1,9 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.concurrent.ScheduledFuture;
+
+public class Sweeper {
+    public static ScheduledFuture<?> schedule(Runnable sweep, long millis) {
+        return Background.schedule("sweeper", "TTL sweep failed", sweep, millis);
+    }
+}
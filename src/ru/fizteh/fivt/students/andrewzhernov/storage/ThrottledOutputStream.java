@@ -0,0 +1,36 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+public class ThrottledOutputStream extends FilterOutputStream {
+    private RateLimiter limiter;
+
+    public ThrottledOutputStream(OutputStream out, RateLimiter limiter) {
+        super(out);
+        this.limiter = limiter;
+    }
+
+    private void acquire(int bytes) throws IOException {
+        try {
+            limiter.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Write interrupted while throttled");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        acquire(len);
+        out.write(b, off, len);
+    }
+}
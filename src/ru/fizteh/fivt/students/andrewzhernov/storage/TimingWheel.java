@@ -0,0 +1,154 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private long tickMillis;
+    private long current;
+    private Entry[][] slots;
+    private Map<String, Entry> entries;
+    private Set<String> due;
+    private volatile int tracked;
+
+    private static class Entry {
+        private String key;
+        private long deadline;
+        private int level;
+        private int slot;
+        private Entry prev;
+        private Entry next;
+
+        Entry(String key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    public TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        current = now / tickMillis;
+        slots = new Entry[LEVELS][SLOTS];
+        entries = new HashMap<String, Entry>();
+        due = new LinkedHashSet<String>();
+    }
+
+    public synchronized void add(String key, long deadline) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.deadline == deadline) {
+                return;
+            }
+            unlink(entry);
+        } else {
+            entry = new Entry(key, deadline);
+            entries.put(key, entry);
+        }
+        entry.deadline = deadline;
+        due.remove(key);
+        place(entry);
+        tracked = entries.size() + due.size();
+    }
+
+    public void remove(String key) {
+        if (tracked == 0) {
+            return;
+        }
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+            due.remove(key);
+            tracked = entries.size() + due.size();
+        }
+    }
+
+    private void place(Entry entry) {
+        long tick = (entry.deadline + tickMillis - 1) / tickMillis;
+        long delta = tick - current;
+        if (delta <= 0) {
+            entries.remove(entry.key);
+            due.add(entry.key);
+            return;
+        }
+        if (delta >= SPAN) {
+            tick = current + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            ++level;
+        }
+        entry.level = level;
+        entry.slot = (int) (tick >>> (SLOT_BITS * level) & (SLOTS - 1));
+        entry.prev = null;
+        entry.next = slots[level][entry.slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        slots[level][entry.slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            slots[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void cascade(int level, int slot) {
+        Entry entry = slots[level][slot];
+        slots[level][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            place(entry);
+            entry = next;
+        }
+    }
+
+    public synchronized List<String> advance(long now) {
+        long target = now / tickMillis;
+        while (current < target) {
+            ++current;
+            for (int level = LEVELS - 1; level > 0; --level) {
+                if ((current & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (current >>> (SLOT_BITS * level) & (SLOTS - 1)));
+                }
+            }
+            cascade(0, (int) (current & (SLOTS - 1)));
+        }
+        List<String> expired = new ArrayList<String>(due);
+        due.clear();
+        tracked = entries.size();
+        return expired;
+    }
+
+    public int size() {
+        return tracked;
+    }
+
+    public synchronized void clear() {
+        slots = new Entry[LEVELS][SLOTS];
+        entries.clear();
+        due.clear();
+        tracked = 0;
+    }
+}
@@ -0,0 +1,113 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TsvReader implements RecordSource {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path path;
+    private InputStream input;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] field;
+    private int fieldLength;
+    private long line;
+    private String key;
+    private String value;
+
+    public TsvReader(Path path) throws Exception {
+        this.path = path;
+        input = Files.newInputStream(path);
+        buffer = new byte[BUFFER_SIZE];
+        field = new byte[256];
+    }
+
+    private int read() throws Exception {
+        if (position == limit) {
+            limit = input.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private void append(int next) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = (byte) next;
+    }
+
+    private int readField(boolean last) throws Exception {
+        fieldLength = 0;
+        while (true) {
+            int next = read();
+            if (next == -1 || next == '\n' || (next == '\t' && !last)) {
+                if (next != '\t' && fieldLength > 0 && field[fieldLength - 1] == '\r') {
+                    --fieldLength;
+                }
+                return next;
+            }
+            if (next == '\\') {
+                int escaped = read();
+                if (escaped == 't') {
+                    next = '\t';
+                } else if (escaped == 'n') {
+                    next = '\n';
+                } else if (escaped == 'r') {
+                    next = '\r';
+                } else if (escaped == '\\') {
+                    next = '\\';
+                } else {
+                    throw new Exception(path + ":" + line + ": bad escape sequence");
+                }
+            }
+            append(next);
+        }
+    }
+
+    @Override
+    public boolean next() throws Exception {
+        while (true) {
+            ++line;
+            int end = readField(false);
+            if (end == -1 && fieldLength == 0) {
+                return false;
+            }
+            if (end != '\t') {
+                if (fieldLength == 0) {
+                    continue;
+                }
+                throw new Exception(path + ":" + line + ": expected <key><TAB><value>");
+            }
+            key = new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            readField(true);
+            value = new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.fizteh.fivt.students.andrewzhernov.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TsvWriter implements RecordSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private OutputStream output;
+
+    public TsvWriter(Path path) throws Exception {
+        output = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE);
+    }
+
+    private void writeField(String word) throws Exception {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int start = 0;
+        for (int i = 0; i < bytes.length; ++i) {
+            byte escaped;
+            switch (bytes[i]) {
+                case '\t':
+                    escaped = 't';
+                    break;
+                case '\n':
+                    escaped = 'n';
+                    break;
+                case '\r':
+                    escaped = 'r';
+                    break;
+                case '\\':
+                    escaped = '\\';
+                    break;
+                default:
+                    continue;
+            }
+            output.write(bytes, start, i - start);
+            output.write('\\');
+            output.write(escaped);
+            start = i + 1;
+        }
+        output.write(bytes, start, bytes.length - start);
+    }
+
+    @Override
+    public void write(String key, String value) throws Exception {
+        writeField(key);
+        output.write('\t');
+        writeField(value);
+        output.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,69 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.Checkpointer;
+
+public class TtlSweepTest {
+    private static final int ROWS = 100;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("fizteh.db.ttl.sweep.ms", "20");
+        Path dir = Files.createTempDirectory("ttl");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ScheduledFuture<?> stall = Checkpointer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 1);
+        try {
+            check(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "checkpointer never ran");
+            Table table = new TableProvider(dir.toString()).createTable("ttl", false, false);
+            for (int i = 0; i < ROWS; ++i) {
+                table.put("k" + i, "v" + i, 50);
+            }
+            table.put("kept", "v");
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (table.size() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            check(table.size() == 1, table.size() + " records left while a checkpoint is running");
+            check("v".equals(table.get("kept")), "record without TTL was swept");
+            table.close();
+        } finally {
+            release.countDown();
+            stall.cancel(false);
+            delete(dir.toFile());
+        }
+        System.out.println("TtlSweepTest: OK");
+    }
+}
@@ -0,0 +1,152 @@
+package ru.fizteh.fivt.students.andrewzhernov.multifilemap;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordFormat;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSink;
+import ru.fizteh.fivt.students.andrewzhernov.storage.RecordSource;
+
+public class TupleStorageTest {
+    private static final int ROWS = 1000;
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static Tuple row(Schema schema, int i) {
+        TupleBuilder builder = schema.newTuple().setInt(0, -i).setLong(1, -1L * i * 1000003)
+                .setByte(2, (byte) (0x80 | i)).setFloat(3, -i / 3.0f).setDouble(4, -i / 7.0)
+                .setBoolean(5, i % 2 == 0);
+        if (i % 5 == 0) {
+            builder.setNull(6);
+        } else {
+            builder.setString(6, "v\u00e9\u0436" + i);
+        }
+        return builder.build();
+    }
+
+    private static long sizeOf(File file, String suffix) {
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child, suffix);
+            }
+        } else if (file.getName().endsWith(suffix)) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void roundTrip(Path dir, String name, boolean sorted, boolean compressed) throws Exception {
+        Schema schema = Schema.parse("(int, long, byte, float, double, boolean, String)");
+        TableProvider provider = new TableProvider(dir.toString());
+        Table table = provider.createTable(name, sorted, compressed, schema);
+        long packed = 0;
+        for (int i = 0; i < ROWS; ++i) {
+            String key = "k" + i;
+            Tuple tuple = row(schema, i);
+            table.putTuple(key, tuple);
+            packed += 8 + key.length() + tuple.getPacked().length();
+        }
+        table.save();
+        table.close();
+
+        table = new TableProvider(dir.toString()).getTable(name);
+        for (int i = 0; i < ROWS; ++i) {
+            Tuple tuple = table.getTuple("k" + i);
+            check(row(schema, i).equals(tuple), name + ": row " + i + " read back as " + tuple);
+        }
+        if (!sorted && !compressed) {
+            long stored = sizeOf(dir.resolve(name).toFile(), ".dat");
+            check(stored == packed, name + ": " + stored + " bytes on disk, packed records take " + packed);
+        }
+        table.close();
+    }
+
+    private static void untyped(Path dir) throws Exception {
+        Table table = new TableProvider(dir.toString()).createTable("untyped", false, false);
+        long utf8 = 0;
+        for (int i = 0; i < ROWS; ++i) {
+            String key = "k" + i;
+            String value = "caf\u00e9 \u00ff" + i;
+            table.put(key, value);
+            utf8 += 8 + key.length() + value.getBytes(StandardCharsets.UTF_8).length;
+        }
+        table.save();
+        table.close();
+        long stored = sizeOf(dir.resolve("untyped").toFile(), ".dat");
+        check(stored == utf8, "untyped: " + stored + " bytes on disk, UTF-8 records take " + utf8);
+        table = new TableProvider(dir.toString()).getTable("untyped");
+        check(("caf\u00e9 \u00ff7").equals(table.get("k7")), "untyped: k7 read back as " + table.get("k7"));
+        table.close();
+    }
+
+    private static boolean rejects(Table table, String tsv, RecordFormat format) throws Exception {
+        Path file = Files.createTempFile("import", "." + format.name().toLowerCase());
+        try {
+            if (format == RecordFormat.TSV) {
+                Files.write(file, tsv.getBytes(StandardCharsets.UTF_8));
+            } else {
+                try (RecordSink sink = format.openSink(file)) {
+                    String[] fields = tsv.split("\t");
+                    sink.write(fields[0], fields[1]);
+                }
+            }
+            try (RecordSource source = format.openSource(file)) {
+                table.importRecords(source, format);
+            }
+            return false;
+        } catch (Exception e) {
+            return true;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void validation(Path dir) throws Exception {
+        Schema schema = Schema.parse("(int, String)");
+        Table table = new TableProvider(dir.toString()).createTable("checked", false, false, schema);
+        try {
+            table.put("raw", "not a tuple");
+            check(false, "checked: put accepted a value that is not a packed tuple");
+        } catch (Exception e) {
+            check(table.get("raw") == null, "checked: rejected put was stored");
+        }
+        check(rejects(table, "bad\t[1, 2]\n", RecordFormat.TSV), "checked: tsv import accepted [1, 2]");
+        check(rejects(table, "bad\tnot a tuple", RecordFormat.NATIVE), "checked: native import accepted raw text");
+        check(!rejects(table, "good\t[1, \"x\"]\n", RecordFormat.TSV), "checked: tsv import rejected [1, \"x\"]");
+        check(schema.parseTuple("[1, \"x\"]").equals(table.getTuple("good")), "checked: good read back as "
+                + table.getTuple("good"));
+        table.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("tuples");
+        try {
+            roundTrip(dir, "plain", false, false);
+            roundTrip(dir, "compressed", false, true);
+            roundTrip(dir, "sorted", true, false);
+            untyped(dir);
+            validation(dir);
+        } finally {
+            delete(dir.toFile());
+        }
+        System.out.println("TupleStorageTest: OK");
+    }
+}